@@ -0,0 +1,79 @@
+package com.connection.assessment.benchmark;
+
+import com.connection.assessment.model.entity.Movie;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of movie graphs: one movie, a page of movies, and every movie of the dataset as
+ * newline delimited json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JacksonBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    int rows;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Movie> movies;
+    private byte[] oneJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        movies = SyntheticMovieData.movies(rows);
+        oneJson = objectMapper.writeValueAsBytes(movies.get(0));
+    }
+
+    @Benchmark
+    public byte[] serializeOne() throws IOException {
+        return objectMapper.writeValueAsBytes(movies.get(0));
+    }
+
+    @Benchmark
+    public Movie deserializeOne() throws IOException {
+        return objectMapper.readValue(oneJson, Movie.class);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws IOException {
+        return objectMapper.writeValueAsBytes(movies.subList(0, PAGE_SIZE));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void serializeAll() throws IOException {
+        try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(new DiscardingOutputStream())) {
+            for (Movie movie : movies) {
+                writer.write(movie);
+            }
+        }
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.connection.assessment.benchmark;
+
+import com.connection.assessment.loader.MovieCsv;
+import com.connection.assessment.model.entity.Movie;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Benchmark datasets scaled up from {@code IMDB-Movie-Data.csv}. Copy {@code k} of every record gets a distinct
+ * rank and title, and actor and director names suffixed with {@code k % 100}, so the dictionaries grow with the
+ * dataset the way they would with real data instead of staying at the size of the original file.
+ */
+public final class SyntheticMovieData {
+
+    private static final int NAME_VARIANTS = 100;
+    // bump when the rows written by csv change, so files written by an older version are not reused
+    private static final int GENERATOR_VERSION = 2;
+
+    private SyntheticMovieData() {
+    }
+
+    /**
+     * Writes a dataset of {@code rows} movies to the temp directory once and reuses it afterwards. The file name holds
+     * the generator version and a checksum of the base csv, so a changed generator or base file writes a new one.
+     *
+     * @param rows Number of movies
+     * @return Path of a csv file in the layout of {@link MovieCsv}
+     */
+    public static Path csv(int rows) throws IOException {
+        byte[] baseCsv = baseCsv();
+        CRC32 checksum = new CRC32();
+        checksum.update(baseCsv);
+        Path path = Paths.get(System.getProperty("java.io.tmpdir"),
+                "imdb-movies-v" + GENERATOR_VERSION + "-" + Long.toHexString(checksum.getValue()) + "-" + rows + ".csv");
+        if (Files.exists(path)) return path;
+
+        List<CSVRecord> base = baseRecords(baseCsv);
+        Path tmp = Files.createTempFile(path.getParent(), "imdb-movies-", ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+             CSVPrinter printer = MovieCsv.FORMAT.print(out)) {
+            for (int row = 0; row < rows; row++) {
+                CSVRecord record = base.get(row % base.size());
+                int copy = row / base.size();
+                String suffix = copy == 0 ? "" : " " + (copy % NAME_VARIANTS);
+                List<String> actors = new ArrayList<>();
+                for (String actor : record.get("Actors").split(",")) {
+                    actors.add(actor.trim() + suffix);
+                }
+                printer.printRecord(row + 1,
+                        copy == 0 ? record.get("Title") : record.get("Title") + " #" + copy,
+                        record.get("Genre"), record.get("Description"), record.get("Director") + suffix,
+                        String.join(",", actors), record.get("Year"), record.get("Runtime (Minutes)"),
+                        record.get("Rating"), record.get("Votes"), record.get("Revenue (Millions)"), record.get("Metascore"));
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        return path;
+    }
+
+    /**
+     * Maps a dataset to detached movies with ids {@code 1..rows} and unresolved genres, actors and director.
+     *
+     * @param rows Number of movies
+     * @return The movies
+     */
+    public static List<Movie> movies(int rows) throws IOException {
+        List<Movie> movies = new ArrayList<>(rows);
+        try (Reader in = Files.newBufferedReader(csv(rows), StandardCharsets.UTF_8); CSVParser parser = MovieCsv.FORMAT.parse(in)) {
+            for (CSVRecord record : parser) {
+                if (MovieCsv.isHeader(record)) continue;
+                Movie movie = MovieCsv.toMovie(record);
+                movie.setId((long) movies.size() + 1);
+                movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    private static byte[] baseCsv() throws IOException {
+        try (InputStream in = SyntheticMovieData.class.getResourceAsStream("/IMDB-Movie-Data.csv")) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+
+    private static List<CSVRecord> baseRecords(byte[] baseCsv) {
+        try (Reader in = new InputStreamReader(new ByteArrayInputStream(baseCsv), StandardCharsets.UTF_8);
+             CSVParser parser = MovieCsv.FORMAT.parse(in)) {
+            List<CSVRecord> records = new ArrayList<>();
+            for (CSVRecord record : parser) {
+                if (!MovieCsv.isHeader(record)) records.add(record);
+            }
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.connection.assessment.loader;
+
+import com.connection.assessment.benchmark.SyntheticMovieData;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and mapping a whole csv file to movies, the part of the startup import that runs before any database
+ * write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvParseBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int rows;
+
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = SyntheticMovieData.csv(rows);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        try (Reader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8); CSVParser parser = MovieCsv.FORMAT.parse(in)) {
+            for (CSVRecord record : parser) {
+                if (MovieCsv.isHeader(record)) continue;
+                blackhole.consume(MovieCsv.toMovie(record));
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.ConnectionAssessmentApplication;
+import com.connection.assessment.benchmark.SyntheticMovieData;
+import com.connection.assessment.loader.ImportJob;
+import com.connection.assessment.loader.ImportJobService;
+import com.connection.assessment.model.dto.MoviePage;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MovieService} against the application context with a synthetic dataset imported at startup, without the
+ * web layer. Reads pick a random movie or page so the movie cache sees the dataset rather than one hot entry. Movies
+ * created by an iteration are deleted after it, so every iteration measures the same catalogue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieServiceBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private MovieService movieService;
+    private long[] ids;
+    private final Queue<Long> created = new ConcurrentLinkedQueue<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        context = new SpringApplicationBuilder(ConnectionAssessmentApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("movie.import.location=file:" + SyntheticMovieData.csv(rows).toAbsolutePath(),
+                        "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        awaitStartupImport();
+        movieService = context.getBean(MovieService.class);
+        ids = context.getBean(JdbcTemplate.class).queryForList("SELECT id FROM movie ORDER BY id", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * The startup import runs in the background after the context is up; measuring before it completes would read a
+     * partial catalogue, so a failed import fails the trial.
+     */
+    private void awaitStartupImport() throws InterruptedException {
+        ImportJobService importJobService = context.getBean(ImportJobService.class);
+        ImportJob job = importJobService.getStartupJob();
+        while (job != null && (job.getStatus() == ImportJob.Status.QUEUED || job.getStatus() == ImportJob.Status.RUNNING)) {
+            Thread.sleep(50);
+            job = importJobService.getStartupJob();
+        }
+        if (job == null || job.getStatus() != ImportJob.Status.COMPLETED) {
+            throw new IllegalStateException("Startup import did not complete: " + (job == null ? "no job" : job.getError()));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCreatedMovies() {
+        for (Long id = created.poll(); id != null; id = created.poll()) {
+            movieService.deleteMovie(id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public Movie getMovie() {
+        return movieService.getMovie(randomId());
+    }
+
+    @Benchmark
+    public MoviePage getMovies() {
+        return movieService.getMovies(MovieService.encodeCursor(randomId()), PAGE_SIZE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Movie> getMovieForGenre() {
+        return movieService.getMovieForGenre("Sci-Fi");
+    }
+
+    @Benchmark
+    public Movie createMovie() {
+        Movie movie = new Movie();
+        movie.setTitle("Benchmark Title");
+        movie.setReleaseYear(2022);
+        Genre genre = new Genre();
+        genre.setCode("Drama");
+        movie.setGenres(new HashSet<>(Collections.singletonList(genre)));
+        Actor actor = new Actor();
+        actor.setName("Benchmark Actor " + ThreadLocalRandom.current().nextInt(1000));
+        movie.setActors(new HashSet<>(Collections.singletonList(actor)));
+        Movie saved = movieService.createMovie(movie);
+        created.add(saved.getId());
+        return saved;
+    }
+
+    @Benchmark
+    public Movie updateMovie() {
+        Movie movie = new Movie();
+        movie.setRating(ThreadLocalRandom.current().nextInt(100) / 10.0);
+        return movieService.updateMovie(movie, randomId());
+    }
+}
@@ -0,0 +1,87 @@
+package com.connection.assessment.controller;
+
+import com.connection.assessment.model.dto.ActorNeighbourhood;
+import com.connection.assessment.model.dto.ActorPath;
+import com.connection.assessment.model.dto.CoStar;
+import com.connection.assessment.service.ActorService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+public class ActorController {
+
+    @Autowired
+    ActorService actorService;
+
+    /**
+     * Request:
+     * URL: /actors/{from}/path/{to}
+     * Method: GET
+     * Response:
+     * Returns the shortest chain of movies connecting two actors. Example: {"degrees":1,"steps":[{"actorId":4,"actorName":"Chris Pratt","movieId":73,"movieTitle":"Passengers"},{"actorId":69,"actorName":"Jennifer Lawrence","movieId":null,"movieTitle":null}]}
+     * The response code is 200. In case either actor has no movies or the actors are not connected return status code 404.
+     *
+     * @param from An actor id
+     * @param to   Another actor id
+     * @return The actors on the chain and the movies linking them
+     */
+    @Operation(summary = "Get the shortest chain of movies between two actors")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found a path", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = ActorPath.class))}), @ApiResponse(responseCode = "404", description = "Actor not found or not connected", content = @Content)})
+    @GetMapping("/actors/{from}/path/{to}")
+    ActorPath path(@Parameter(description = "id of the first actor") @PathVariable Long from,
+                   @Parameter(description = "id of the second actor") @PathVariable Long to) {
+        return actorService.getPath(from, to);
+    }
+
+    /**
+     * Request:
+     * URL: /actors/{id}/costars?limit={limit}
+     * Method: GET
+     * Response:
+     * Returns the actors who played in a movie with the actor, most shared movies first. Example: [{"id":6,"name":"Bradley Cooper","sharedMovies":1},{"id":5,"name":"Vin Diesel","sharedMovies":1},........]
+     * The response code is 200. In case the limit is invalid return status code 400, in case the actor has no movies 404.
+     *
+     * @param id    An actor id
+     * @param limit The maximum number of co-stars
+     * @return Co-stars of the actor
+     */
+    @Operation(summary = "Get the co-stars of an actor")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found co-stars", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = CoStar.class)))}), @ApiResponse(responseCode = "400", description = "Invalid limit", content = @Content), @ApiResponse(responseCode = "404", description = "Actor not found", content = @Content)})
+    @GetMapping("/actors/{id}/costars")
+    List<CoStar> coStars(@Parameter(description = "id of the actor") @PathVariable Long id,
+                         @Parameter(description = "maximum number of co-stars") @RequestParam(defaultValue = "100") int limit) {
+        return actorService.getCoStars(id, limit);
+    }
+
+    /**
+     * Request:
+     * URL: /actors/{id}/neighbourhood?hops={hops}
+     * Method: GET
+     * Response:
+     * Returns how many actors are first reached after each number of co-star links. Example: {"actorId":4,"actorsPerHop":[21,239],"total":260}
+     * The response code is 200. In case hops is not between 1 and 6 return status code 400, in case the actor has no movies 404.
+     *
+     * @param id   An actor id
+     * @param hops The number of co-star links to follow
+     * @return Actor counts per hop
+     */
+    @Operation(summary = "Count the actors within k co-star links of an actor")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Actor counts per hop", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = ActorNeighbourhood.class))}), @ApiResponse(responseCode = "400", description = "Invalid hops", content = @Content), @ApiResponse(responseCode = "404", description = "Actor not found", content = @Content)})
+    @GetMapping("/actors/{id}/neighbourhood")
+    ActorNeighbourhood neighbourhood(@Parameter(description = "id of the actor") @PathVariable Long id,
+                                     @Parameter(description = "number of co-star links to follow") @RequestParam(defaultValue = "2") int hops) {
+        return actorService.getNeighbourhood(id, hops);
+    }
+}
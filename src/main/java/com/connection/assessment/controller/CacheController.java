@@ -0,0 +1,57 @@
+package com.connection.assessment.controller;
+
+import com.connection.assessment.model.dto.CacheStats;
+import com.connection.assessment.service.DictionaryCache;
+import com.connection.assessment.service.MovieCache;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+public class CacheController {
+
+    @Autowired
+    DictionaryCache dictionaryCache;
+    @Autowired
+    MovieCache movieCache;
+
+    /**
+     * Request:
+     * URL: /caches/dictionary
+     * Method: GET
+     * Response:
+     * Returns hit and miss counters of the genre, actor and director name caches. Example: {"genres":{"hits":120,"misses":20,"size":20,"hitRatio":0.857},"actors":{...},"directors":{...}}
+     * The response code is 200.
+     *
+     * @return counters per dictionary
+     */
+    @Operation(summary = "Get genre, actor and director cache statistics")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Cache statistics", content = @Content(mediaType = "application/json"))})
+    @GetMapping("/caches/dictionary")
+    Map<String, CacheStats> getDictionaryStats() {
+        return dictionaryCache.getStats();
+    }
+
+    /**
+     * Request:
+     * URL: /caches/movie
+     * Method: GET
+     * Response:
+     * Returns hit and miss counters of the movie by id cache. Example: {"hits":950,"misses":50,"size":50,"hitRatio":0.95}
+     * The response code is 200.
+     *
+     * @return counters of the movie cache
+     */
+    @Operation(summary = "Get movie cache statistics")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Cache statistics", content = @Content(mediaType = "application/json"))})
+    @GetMapping("/caches/movie")
+    CacheStats getMovieCacheStats() {
+        return movieCache.getStats();
+    }
+}
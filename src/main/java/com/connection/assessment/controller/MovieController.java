@@ -1,9 +1,23 @@
 package com.connection.assessment.controller;
 
+import com.connection.assessment.loader.ImportJob;
+import com.connection.assessment.loader.ImportJobService;
+import com.connection.assessment.model.dto.BatchItemResult;
+import com.connection.assessment.model.dto.CorrelationStats;
+import com.connection.assessment.model.dto.GenreFilterResult;
+import com.connection.assessment.model.dto.GroupStats;
+import com.connection.assessment.model.dto.MoviePage;
+import com.connection.assessment.model.dto.MovieProjectionPage;
+import com.connection.assessment.model.dto.RangeFilterResult;
+import com.connection.assessment.model.dto.SearchHit;
+import com.connection.assessment.model.dto.SimilarMovie;
+import com.connection.assessment.model.dto.TopMovie;
 import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.service.MovieBatchService;
 import com.connection.assessment.service.MovieService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -11,37 +25,152 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 public class MovieController {
 
     private static final Logger logger = LoggerFactory.getLogger(MovieController.class);
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     @Autowired
     MovieService movieService;
+    @Autowired
+    MovieBatchService movieBatchService;
+    @Autowired
+    ImportJobService importJobService;
 
     /**
      * Request:
-     * URL: /movies
+     * URL: /movies?limit={limit}&after={cursor}
+     * Method: GET
+     * Response:
+     * Returns a page of movies ordered by id, and a cursor for the next page. Example: {"movies":[{"id":9,"movieRank":1,"title":"Guardians of the Galaxy","genres":[{"id":1,"code":"Action"},{"id":2,"code":"Adventure"},{"id":3,"code":"Sci-Fi"}],"description":"A group of intergalactic criminals are forced to work together to stop a fanatical warrior from taking control of the universe.","director":{"id":8,"name":"James Gunn"},"actors":[{"id":4,"name":"Chris Pratt"},...],"releaseYear":2014,"runtime":121,"rating":8.1,"votes":757074,"revenue":333.13,"metaScore":76},........],"nextCursor":"MTY"}
+     * The response code is 200, and the response body is a page of movies. The next cursor is null on the last page. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
+     * In case the cursor or limit is invalid return status code 400.
+     *
+     * @param limit   The maximum number of movies on the page
+     * @param after   The cursor of the previous page
+     * @param request The request, for its If-None-Match header
+     * @return A page of movies
+     */
+    @Operation(summary = "Get a page of movies")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = MoviePage.class))}), @ApiResponse(responseCode = "400", description = "Invalid cursor or limit", content = @Content)})
+    @GetMapping(value = "/movies", produces = MediaType.APPLICATION_JSON_VALUE)
+    MoviePage getMovies(@Parameter(description = "maximum number of movies on the page") @RequestParam(defaultValue = "50") int limit,
+                        @Parameter(description = "cursor returned with the previous page") @RequestParam(required = false) String after,
+                        WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
+        return movieService.getMovies(after, limit);
+    }
+
+    /**
+     * Request:
+     * URL: /movies?fields={field},{field}&limit={limit}&after={cursor}
+     * Method: GET
+     * Response:
+     * Returns a page of movies like /movies, with only the requested fields. Only their columns are selected, and the director, genres and actors are only read when requested. Example: {"movies":[{"id":9,"title":"Guardians of the Galaxy","releaseYear":2014,"rating":8.1},........],"nextCursor":"MTY"}
+     * The response code is 200. In case a field is unknown or the cursor or limit is invalid return status code 400. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
+     *
+     * @param limit   The maximum number of movies on the page
+     * @param after   The cursor of the previous page
+     * @param fields  Comma separated field names
+     * @param request The request, for its If-None-Match header
+     * @return A page of movies with the requested fields
+     */
+    @Operation(summary = "Get a page of movies with only some fields")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = MovieProjectionPage.class))}), @ApiResponse(responseCode = "400", description = "Invalid fields, cursor or limit", content = @Content)})
+    @GetMapping(value = "/movies", params = "fields", produces = MediaType.APPLICATION_JSON_VALUE)
+    MovieProjectionPage getMovies(@Parameter(description = "maximum number of movies on the page") @RequestParam(defaultValue = "50") int limit,
+                                  @Parameter(description = "cursor returned with the previous page") @RequestParam(required = false) String after,
+                                  @Parameter(description = "comma separated fields to return, for example id,title,releaseYear,rating") @RequestParam String fields,
+                                  WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
+        return movieService.getMovies(after, limit, fields);
+    }
+
+    /**
+     * Request:
+     * URL: /movies?unpaged=true
      * Method: GET
      * Response:
      * Returns a collection of all movies. Example: [{"id":1,R"rank:1,"title":"Guardians of the Galaxy","genre":["Action","Adventure","Sci-Fi"],"description":"A group of intergalactic criminals are forced to work together to stop a fanatical warrior from taking control of the universe.","director":"James Gunn","actors":["Chris Pratt","Vin Diesel","Bradley Cooper","Zoe Saldana"],"year":2014,"runtime":121,"rating":8.1,"votes":757074,"revenue":333.13,"metascore":76},{"id":2,"rank":2,"title":"Prometheus","genre":["Mystery","Adventure","Sci-Fi"],"description":"Following clues to the origin of mankind, a team finds a structure on a distant moon, but they soon realize they are not alone.","director":"Ridley Scott","actors":["Noomi Rapace","Logan Marshall-Green","Michael Fassbender","Charlize Theron"],"year":2012,"runtime": 124,"rating":7,"votes": 485820,"revenue":126.46,"metascore":65},........]
-     * The response code is 200, and the response body is a list of movies.
+     * The response code is 200, and the response body is a list of movies. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
      *
+     * @param request The request, for its If-None-Match header
      * @return all Movies
      */
 
     @Operation(summary = "Get all movies")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))})})
-    @GetMapping("/movies")
-    Iterable<Movie> getMovies() {
+    @GetMapping(value = "/movies", params = "unpaged=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    Iterable<Movie> getAllMovies(WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
         return movieService.getMovies();
     }
 
+    /**
+     * Request:
+     * URL: /movies?unpaged=true&fields={field},{field}
+     * Method: GET
+     * Response:
+     * Returns a collection of all movies with only the requested fields, written while they are read in blocks of 200. Example: [{"id":9,"title":"Guardians of the Galaxy","releaseYear":2014,"rating":8.1},........]
+     * The response code is 200. In case a field is unknown return status code 400. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
+     *
+     * @param fields  Comma separated field names
+     * @param request The request, for its If-None-Match header
+     * @return all Movies with the requested fields
+     */
+    @Operation(summary = "Get all movies with only some fields")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Movie.class)))}), @ApiResponse(responseCode = "400", description = "Invalid fields", content = @Content)})
+    @GetMapping(value = "/movies", params = {"unpaged=true", "fields"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    Iterable<Map<String, Object>> getAllMovies(@Parameter(description = "comma separated fields to return") @RequestParam String fields,
+                                               WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
+        return movieService.getMovies(fields);
+    }
+
+    /**
+     * Request:
+     * URL: /movies
+     * Method: GET
+     * Accept: application/x-ndjson
+     * Response:
+     * Streams all movies, one json object per line, while they are read from the database. With fields={field},{field} only those fields are read and written, like /movies?unpaged=true&fields=. Paging parameters are ignored. Example:
+     * {"id":9,"movieRank":1,"title":"Guardians of the Galaxy",...}
+     * {"id":16,"movieRank":2,"title":"Prometheus",...}
+     * The response code is 200. In case a field is unknown return status code 400. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
+     *
+     * @param fields  Comma separated field names, or null for all fields
+     * @param request The request, for its If-None-Match header
+     * @return all movies as newline delimited json
+     */
+    @Operation(summary = "Stream all movies as newline delimited json")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "400", description = "Invalid fields", content = @Content)})
+    @GetMapping(value = "/movies", produces = APPLICATION_NDJSON_VALUE)
+    StreamingResponseBody streamMovies(@Parameter(description = "comma separated fields to return") @RequestParam(required = false) String fields,
+                                       WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
+        if (fields == null) return out -> movieService.writeMovies(null, out);
+        // the fields are checked before the response starts, so an unknown one still gets a 400
+        Iterable<Map<String, Object>> movies = movieService.getMovies(fields);
+        return out -> movieService.writeProjections(movies, out);
+    }
+
     /**
      * Request:
      * URL: /movies/{id}
@@ -49,36 +178,317 @@ public class MovieController {
      * Response:
      * Returns a movie object equal to the id supplied. Example: {"id":1,"rank" :1,"title":"Guardians of the Galaxy","genre":["Action","Adventure","Sci-Fi"],"description":"A group of intergalactic criminals are forced to work together to stop a fanatical warrior from taking control of the universe.","director":"James Gunn","actors":["Chris Pratt","Vin Diesel","Bradley Cooper","Zoe Saldana"],"year":2014,"runtime":121,"rating":8.1,"votes":757074,"revenue":333.13,"metascore":76}
      * The response code is 200, and the response body is a movie object equal to the id provided.
-     * In case there are no such a movie return status code 404.
+     * In case there are no such a movie return status code 404. The ETag is the version of the movie; with a matching If-None-Match return status code 304 without loading the movie.
      *
-     * @param id A movie id
+     * @param id      A movie id
+     * @param request The request, for its If-None-Match header
      * @return A movie or 404 if now found
      */
     @Operation(summary = "Get a movie by id")
-    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found a Movie", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "404", description = "Movie not found", content = @Content)})
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found a Movie", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "304", description = "Movie not modified", content = @Content), @ApiResponse(responseCode = "404", description = "Movie not found", content = @Content)})
     @GetMapping("/movies/{id}")
-    Movie one(@Parameter(description = "id of movie to be searched") @PathVariable Long id) {
+    Movie one(@Parameter(description = "id of movie to be searched") @PathVariable Long id, WebRequest request) {
+        String eTag = movieService.getMovieETag(id);
+        if (eTag != null && request.checkNotModified(eTag)) return null;
         return movieService.getMovie(id);
     }
 
+    /**
+     * Request:
+     * URL: /movies/{id}?fields={field},{field}
+     * Method: GET
+     * Response:
+     * Returns the requested fields of the movie equal to the id supplied. Example: {"id":9,"title":"Guardians of the Galaxy","releaseYear":2014,"rating":8.1}
+     * The response code is 200. In case a field is unknown return status code 400, in case there is no such movie 404. The ETag is the version of the movie; with a matching If-None-Match return status code 304.
+     *
+     * @param id      A movie id
+     * @param fields  Comma separated field names
+     * @param request The request, for its If-None-Match header
+     * @return The requested fields of the movie
+     */
+    @Operation(summary = "Get some fields of a movie by id")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found a Movie", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "400", description = "Invalid fields", content = @Content), @ApiResponse(responseCode = "404", description = "Movie not found", content = @Content)})
+    @GetMapping(value = "/movies/{id}", params = "fields")
+    Map<String, Object> one(@Parameter(description = "id of movie to be searched") @PathVariable Long id,
+                            @Parameter(description = "comma separated fields to return") @RequestParam String fields,
+                            WebRequest request) {
+        String eTag = movieService.getMovieETag(id);
+        if (eTag != null && request.checkNotModified(eTag)) return null;
+        return movieService.getMovie(id, fields);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/{id}/votes?rating={rating}
+     * Method: POST
+     * Response:
+     * Counts a vote with a rating from 1 to 10 and returns the movie with the vote included in votes and rating. Votes are written to the database in batches shortly afterwards. Example: {"id":9,"rank":1,"title":"Guardians of the Galaxy",........,"rating":8.100001,"votes":757075,"revenue":333.13,"metascore":76}
+     * The response code is 202. In case the rating is invalid return status code 400, in case there is no such movie 404.
+     *
+     * @param id     A movie id
+     * @param rating The rating of the vote
+     * @return The movie with the vote counted
+     */
+    @Operation(summary = "Vote for a movie")
+    @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Vote counted", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "400", description = "Invalid rating", content = @Content), @ApiResponse(responseCode = "404", description = "Movie not found", content = @Content)})
+    @PostMapping("/movies/{id}/votes")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    Movie vote(@Parameter(description = "id of the movie") @PathVariable Long id,
+               @Parameter(description = "rating from 1 to 10") @RequestParam int rating) {
+        return movieService.vote(id, rating);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/{id}/similar?k={k}
+     * Method: GET
+     * Response:
+     * Returns the movies most similar to the movie by genres, actors, director, rating, year and runtime, most similar first. Example: [{"id":1885,"title":"I Am Number Four","score":0.47},........]
+     * The response code is 200. In case k is not between 1 and 50 return status code 400, in case there is no such movie 404.
+     *
+     * @param id A movie id
+     * @param k  The number of similar movies
+     * @return Similar movies with their score
+     */
+    @Operation(summary = "Get movies similar to a movie")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Similar movies", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = SimilarMovie.class)))}), @ApiResponse(responseCode = "400", description = "Invalid k", content = @Content), @ApiResponse(responseCode = "404", description = "Movie not found", content = @Content)})
+    @GetMapping("/movies/{id}/similar")
+    List<SimilarMovie> similar(@Parameter(description = "id of the movie") @PathVariable Long id,
+                               @Parameter(description = "number of similar movies") @RequestParam(defaultValue = "10") int k) {
+        return movieService.getSimilarMovies(id, k);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/top?by={rating|revenue|votes}&genre={genre}&year={year}&limit={limit}
+     * Method: GET
+     * Response:
+     * Returns the movies with the highest rating, revenue or votes, optionally only those of a genre and/or release year, best first. Example: [{"id":9,"title":"Guardians of the Galaxy","releaseYear":2014,"value":8.1},........]
+     * The response code is 200. In case by is not one of rating, revenue and votes or the limit is invalid return status code 400.
+     *
+     * @param by    The value to rank by
+     * @param genre A genre the movies must have
+     * @param year  The release year of the movies
+     * @param limit The maximum number of movies to return
+     * @return The top movies with the value they are ranked by
+     */
+    @Operation(summary = "Get the top movies by rating, revenue or votes")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Top movies", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = TopMovie.class)))}), @ApiResponse(responseCode = "400", description = "Invalid by or limit", content = @Content)})
+    @GetMapping("/movies/top")
+    List<TopMovie> top(@Parameter(description = "rating, revenue or votes") @RequestParam(defaultValue = "rating") String by,
+                       @Parameter(description = "genre of the movies") @RequestParam(required = false) String genre,
+                       @Parameter(description = "release year of the movies") @RequestParam(required = false) Integer year,
+                       @Parameter(description = "maximum number of movies") @RequestParam(defaultValue = "20") int limit) {
+        return movieService.getTopMovies(by, genre, year, limit);
+    }
+
     /**
      * Request:
      * URL: /movies/filter/{genre}
      * Method: GET
      * Response:
      * Returns a collection of all movies equal to the genre supplied. Example: [{"id":1,R"rank:1,"title":"Guardians of the Galaxy","genre":["Action","Adventure","Sci-Fi"],"description":"A group of intergalactic criminals are forced to work together to stop a fanatical warrior from taking control of the universe.","director":"James Gunn","actors":["Chris Pratt","Vin Diesel","Bradley Cooper","Zoe Saldana"],"year":2014,"runtime":121,"rating":8.1,"votes":757074,"revenue":333.13,"metascore":76},{"id":2,"rank":2,"title":"Prometheus","genre":["Mystery","Adventure","Sci-Fi"],"description":"Following clues to the origin of mankind, a team finds a structure on a distant moon, but they soon realize they are not alone.","director":"Ridley Scott","actors":["Noomi Rapace","Logan Marshall-Green","Michael Fassbender","Charlize Theron"],"year":2012,"runtime": 124,"rating":7,"votes": 485820,"revenue":126.46,"metascore":65},........]
-     * The response code is 200, and the response body is a list of movies equal with the genre provided.
+     * The response code is 200, and the response body is a list of movies equal with the genre provided. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
      *
      * @param genre
+     * @param request The request, for its If-None-Match header
      * @return Returns a collection of all movies equal to the {@code genre} supplied.
      */
-    @GetMapping("/movies/filter/{genre}")
+    @GetMapping(value = "/movies/filter/{genre}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get movies for a genre")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies in genre", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))})})
-    List<Movie> getMovieForGenre(@Parameter(description = "genre to be searched (Action, Drama, Adventure)") @PathVariable String genre) {
+    List<Movie> getMovieForGenre(@Parameter(description = "genre to be searched (Action, Drama, Adventure)") @PathVariable String genre,
+                                 WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
         return movieService.getMovieForGenre(genre);
     }
 
+    /**
+     * Request:
+     * URL: /movies/filter/{genre}?fields={field},{field}
+     * Method: GET
+     * Response:
+     * Returns a collection of all movies equal to the genre supplied, with only the requested fields. Example: [{"id":9,"title":"Guardians of the Galaxy","releaseYear":2014,"rating":8.1},........]
+     * The response code is 200. In case a field is unknown return status code 400. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
+     *
+     * @param genre   A genre, case sensitive
+     * @param fields  Comma separated field names
+     * @param request The request, for its If-None-Match header
+     * @return The movies of the genre with the requested fields
+     */
+    @GetMapping(value = "/movies/filter/{genre}", params = "fields", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get movies for a genre with only some fields")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies in genre", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Movie.class)))}), @ApiResponse(responseCode = "400", description = "Invalid fields", content = @Content)})
+    List<Map<String, Object>> getMovieForGenre(@Parameter(description = "genre to be searched (Action, Drama, Adventure)") @PathVariable String genre,
+                                               @Parameter(description = "comma separated fields to return") @RequestParam String fields,
+                                               WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
+        return movieService.getMovieForGenre(genre, fields);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/filter?genre={genre}&genre={genre}&op={and|or}&exclude={genre}&limit={limit}
+     * Method: GET
+     * Response:
+     * Returns the movies that have all (op=and, the default) or any (op=or) of the genres and none of the excluded
+     * genres, together with the number of matches and the number of matches per genre. Genres are case-insensitive.
+     * Example: {"total":42,"genreCounts":{"Action":42,"Adventure":30,"Sci-Fi":42,...},"movies":[{"id":9,"movieRank":1,"title":"Guardians of the Galaxy",...},........]}
+     * The response code is 200. In case the op or limit is invalid return status code 400.
+     *
+     * @param genres  Genres to combine
+     * @param op      and or or
+     * @param exclude Genres to exclude
+     * @param limit   The maximum number of movies to return
+     * @return The matching movies and counts
+     */
+    @GetMapping("/movies/filter")
+    @Operation(summary = "Get movies for a combination of genres")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = GenreFilterResult.class))}), @ApiResponse(responseCode = "400", description = "Invalid op or limit", content = @Content)})
+    GenreFilterResult filterMovies(@Parameter(description = "genres to combine") @RequestParam(name = "genre", required = false) List<String> genres,
+                                   @Parameter(description = "and or or") @RequestParam(defaultValue = "and") String op,
+                                   @Parameter(description = "genres to exclude") @RequestParam(required = false) List<String> exclude,
+                                   @Parameter(description = "maximum number of movies to return") @RequestParam(defaultValue = "50") int limit) {
+        return movieService.filterByGenres(genres == null ? Collections.emptyList() : genres, op,
+                exclude == null ? Collections.emptyList() : exclude, limit);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/filter/{genre}
+     * Method: GET
+     * Accept: application/x-ndjson
+     * Response:
+     * Streams all movies of the genre supplied, one json object per line, while they are read from the database. With fields={field},{field} only those fields are written, like /movies/filter/{genre}?fields=.
+     * The response code is 200. In case a field is unknown return status code 400. The ETag changes with every write to any movie; with a matching If-None-Match return status code 304.
+     *
+     * @param genre   A genre
+     * @param fields  Comma separated field names, or null for all fields
+     * @param request The request, for its If-None-Match header
+     * @return the movies of the {@code genre} as newline delimited json
+     */
+    @Operation(summary = "Stream movies for a genre as newline delimited json")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies in genre", content = {@Content(mediaType = APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "400", description = "Invalid fields", content = @Content)})
+    @GetMapping(value = "/movies/filter/{genre}", produces = APPLICATION_NDJSON_VALUE)
+    StreamingResponseBody streamMovieForGenre(@Parameter(description = "genre to be searched (Action, Drama, Adventure)") @PathVariable String genre,
+                                              @Parameter(description = "comma separated fields to return") @RequestParam(required = false) String fields,
+                                              WebRequest request) {
+        if (request.checkNotModified(movieService.getCatalogueETag())) return null;
+        if (fields == null) return out -> movieService.writeMovies(genre, out);
+        List<Map<String, Object>> movies = movieService.getMovieForGenre(genre, fields);
+        return out -> movieService.writeProjections(movies, out);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/range?year=2010..2016&rating>=7.5&runtime<=120&limit={limit}
+     * Method: GET
+     * Response:
+     * Returns the movies within all ranges on year, runtime, rating, votes, revenue and metascore. A range is
+     * lo..hi, lo.., ..hi or a single value; >=, <=, > and < work as well. Example: {"total":57,"movies":[{"id":9,"title":"Guardians of the Galaxy","releaseYear":2014,"rating":8.1},........]}
+     * The response code is 200. In case a range or the limit is invalid return status code 400.
+     *
+     * @param params The ranges
+     * @param limit  The maximum number of movies to return
+     * @return The number of matching movies and the first {@code limit} of them by id
+     */
+    @GetMapping("/movies/range")
+    @Operation(summary = "Get movies by ranges on numeric fields")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found movies", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = RangeFilterResult.class))}), @ApiResponse(responseCode = "400", description = "Invalid range or limit", content = @Content)})
+    RangeFilterResult filterMoviesByRange(@Parameter(description = "ranges, for example year=2010..2016") @RequestParam MultiValueMap<String, String> params,
+                                          @Parameter(description = "maximum number of movies to return") @RequestParam(defaultValue = "50") int limit) {
+        return movieService.filterByRanges(params, limit);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/stats/genres
+     * Method: GET
+     * Response:
+     * Returns count, average rating and total revenue (millions) per genre. Example: [{"key":"Action","count":303,"averageRating":6.61,"totalRevenue":34076.92},........]
+     * The response code is 200.
+     *
+     * @return Statistics per genre
+     */
+    @GetMapping("/movies/stats/genres")
+    @Operation(summary = "Get movie statistics per genre")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Statistics per genre", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = GroupStats.class)))})})
+    List<GroupStats> getGenreStats() {
+        return movieService.getGenreStats();
+    }
+
+    /**
+     * Request:
+     * URL: /movies/stats/years
+     * Method: GET
+     * Response:
+     * Returns count, average rating and total revenue (millions) per release year. Example: [{"key":"2006","count":44,"averageRating":7.13,"totalRevenue":3624.46},........]
+     * The response code is 200.
+     *
+     * @return Statistics per release year
+     */
+    @GetMapping("/movies/stats/years")
+    @Operation(summary = "Get movie statistics per release year")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Statistics per release year", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = GroupStats.class)))})})
+    List<GroupStats> getYearStats() {
+        return movieService.getYearStats();
+    }
+
+    /**
+     * Request:
+     * URL: /movies/stats/directors?limit={limit}
+     * Method: GET
+     * Response:
+     * Returns count, average rating and total revenue (millions) of the directors with the most movies. Example: [{"key":"Ridley Scott","count":8,"averageRating":6.85,"totalRevenue":1017.32},........]
+     * The response code is 200. In case the limit is invalid return status code 400.
+     *
+     * @param limit The maximum number of directors to return
+     * @return Statistics per director
+     */
+    @GetMapping("/movies/stats/directors")
+    @Operation(summary = "Get movie statistics of the directors with the most movies")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Statistics per director", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = GroupStats.class)))}), @ApiResponse(responseCode = "400", description = "Invalid limit", content = @Content)})
+    List<GroupStats> getDirectorStats(@Parameter(description = "maximum number of directors to return") @RequestParam(defaultValue = "20") int limit) {
+        return movieService.getDirectorStats(limit);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/stats/correlation
+     * Method: GET
+     * Response:
+     * Returns the Pearson correlation of metascore and rating over the movies that have both. Example: {"count":936,"pearson":0.63}
+     * The response code is 200.
+     *
+     * @return The correlation
+     */
+    @GetMapping("/movies/stats/correlation")
+    @Operation(summary = "Get the correlation of metascore and rating")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Correlation", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = CorrelationStats.class))})})
+    CorrelationStats getMetaScoreRatingCorrelation() {
+        return movieService.getMetaScoreRatingCorrelation();
+    }
+
+    /**
+     * Request:
+     * URL: /movies/search?q={query}&limit={limit}
+     * Method: GET
+     * Response:
+     * Returns the movies whose title and description best match the query, best first. Example: [{"id":33,"title":"Suicide Squad","score":14.2},........]
+     * The response code is 200. In case the limit is invalid return status code 400.
+     *
+     * @param q     Free text
+     * @param limit The maximum number of hits
+     * @return The best matching movies
+     */
+    @GetMapping("/movies/search")
+    @Operation(summary = "Search movies by title and description")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Matching movies", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = SearchHit.class))}), @ApiResponse(responseCode = "400", description = "Invalid limit", content = @Content)})
+    List<SearchHit> search(@Parameter(description = "free text") @RequestParam String q,
+                           @Parameter(description = "maximum number of hits") @RequestParam(defaultValue = "10") int limit) {
+        return movieService.search(q, limit);
+    }
+
     /**
      * Request:
      * URL: /movies
@@ -101,6 +511,28 @@ public class MovieController {
         return movieService.createMovie(movie);
     }
 
+    /**
+     * Request:
+     * URL: /movies/batch?upsert={upsert}
+     * Method: POST
+     * Payload (Example): [{"title":"Fight Club","releaseYear":1999,"genres":[{"code":"Drama"}],"actors":[{"name":"Brad Pitt"}],"director":{"name":"David Fincher"}},........]
+     * Response:
+     * Creates up to 10000 movies in one transaction. With upsert=true a movie with the same title and release year is
+     * overwritten instead. Returns one result per movie in request order. Example: [{"index":0,"id":1012,"status":"CREATED","error":null},{"index":1,"id":null,"status":"REJECTED","error":"Missing title"}]
+     * The response code is 200. In case the batch is empty or too large return status code 400.
+     *
+     * @param movies Movies to create or update
+     * @param upsert Whether to overwrite movies with the same title and release year
+     * @return One result per movie
+     */
+    @Operation(summary = "Create or update many movies")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Results per movie", content = {@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = BatchItemResult.class)))}), @ApiResponse(responseCode = "400", description = "Empty or too large batch", content = @Content), @ApiResponse(responseCode = "409", description = "Conflicting concurrent write", content = @Content)})
+    @PostMapping("/movies/batch")
+    List<BatchItemResult> createMovies(@Parameter(description = "Movies to be created") @RequestBody List<Movie> movies,
+                                       @Parameter(description = "overwrite movies with the same title and release year") @RequestParam(defaultValue = "false") boolean upsert) {
+        return movieBatchService.writeMovies(movies, upsert);
+    }
+
 
     /**
      * Request:
@@ -109,19 +541,25 @@ public class MovieController {
      * Payload (Example): {"rank" :1,"title":"Guardians of the Galaxy - Part 1","genre":["Action","Adventure","Sci-Fi"],"description":"A group of intergalactic criminals are forced to work together to stop a fanatical warrior from taking control of the universe.","director":"James Gunn","actors":["Chris Pratt","Vin Diesel","Bradley Cooper","Zoe Saldana"],"year":2014,"runtime":121,"rating":8.1,"votes":757074,"revenue":333.13,"metascore":76}
      * Response:
      * Returns the movie object patched. Example: {"id":1,"rank" :1,"title":"Guardians of the Galaxy - Part 1","genre":["Action","Adventure","Sci-Fi"],"description":"A group of intergalactic criminals are forced to work together to stop a fanatical warrior from taking control of the universe.","director":"James Gunn","actors":["Chris Pratt","Vin Diesel","Bradley Cooper","Zoe Saldana"],"year":2014,"runtime":121,"rating":8.1,"votes":757074,"revenue":333.13,"metascore":76}
-     * The response code is 200 and the response body is the movie object patched.
-     * In case there are no such movies return status code 404.
+     * The response code is 200 and the response body is the movie object patched, with its new ETag.
+     * In case there are no such movies return status code 404. With an If-Match header the movie is only patched if it still has one of the ETags, otherwise return status code 412. Without it, a patch that keeps losing to concurrent writes is answered with 409.
      *
      * @param newMovie A movie to update
      * @param id       a unique identifier for the movie
+     * @param ifMatch  ETags the movie must still have
+     * @param response The response to set the ETag on
      * @return An updated movie
      */
 
     @Operation(summary = "Update a movie")
-    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Movie updated", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "400", description = "Invalid Movie supplied", content = @Content), @ApiResponse(responseCode = "404", description = "No movie found with id", content = @Content)})
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Movie updated", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "400", description = "Invalid Movie supplied", content = @Content), @ApiResponse(responseCode = "404", description = "No movie found with id", content = @Content), @ApiResponse(responseCode = "409", description = "Conflicting concurrent write", content = @Content), @ApiResponse(responseCode = "412", description = "Movie has changed", content = @Content)})
     @PatchMapping("/movies/{id}")
-    Movie updateMovie(@Parameter(description = "Movie with new attributes to be updated") @RequestBody Movie newMovie, @Parameter(description = "id of movie to be updated") @PathVariable Long id) {
-        return this.movieService.updateMovie(newMovie, id);
+    Movie updateMovie(@Parameter(description = "Movie with new attributes to be updated") @RequestBody Movie newMovie, @Parameter(description = "id of movie to be updated") @PathVariable Long id,
+                      @Parameter(description = "ETag the movie must still have") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                      HttpServletResponse response) {
+        Movie updated = this.movieService.updateMovie(newMovie, id, ifMatch);
+        response.setHeader(HttpHeaders.ETAG, MovieService.eTag(updated));
+        return updated;
     }
 
     /**
@@ -130,14 +568,53 @@ public class MovieController {
      * Method: DELETE
      * Response:
      * The response code is 200.
-     * In case there are no such movies return status code 404.
+     * In case there are no such movies return status code 404. With an If-Match header the movie is only deleted if it still has one of the ETags, otherwise return status code 412. Without it, a delete that keeps losing to concurrent writes is answered with 409.
      *
-     * @param id A unique identifier for the movie
+     * @param id      A unique identifier for the movie
+     * @param ifMatch ETags the movie must still have
      */
     @Operation(summary = "Delete a movie")
-    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Movie deleted", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "404", description = "No movie found with id", content = @Content)})
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Movie deleted", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Movie.class))}), @ApiResponse(responseCode = "404", description = "No movie found with id", content = @Content), @ApiResponse(responseCode = "409", description = "Conflicting concurrent write", content = @Content), @ApiResponse(responseCode = "412", description = "Movie has changed", content = @Content)})
     @DeleteMapping("/movies/{id}")
-    void deleteMovie(@Parameter(description = "id of movie to be deleted") @PathVariable Long id) {
-        this.movieService.deleteMovie(id);
+    void deleteMovie(@Parameter(description = "id of movie to be deleted") @PathVariable Long id,
+                     @Parameter(description = "ETag the movie must still have") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        this.movieService.deleteMovie(id, ifMatch);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/import
+     * Method: POST
+     * Payload: multipart/form-data with a csv {@code file} in the layout of IMDB-Movie-Data.csv
+     * Response:
+     * The response code is 202 and the response body is the queued import job. Example: {"id":"5b0f...","status":"QUEUED","error":null,"progress":{"rowsRead":0,"rowsWritten":0,"rowsRejected":0,"elapsedMillis":0,"rowsPerSecond":0.0}}
+     *
+     * @param file A csv file of movies
+     * @return The import job
+     */
+    @Operation(summary = "Import movies from a csv file")
+    @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Import queued", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = ImportJob.class))})})
+    @PostMapping(value = "/movies/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    ImportJob importMovies(@Parameter(description = "csv file of movies") @RequestParam("file") MultipartFile file) throws IOException {
+        return importJobService.submit(file);
+    }
+
+    /**
+     * Request:
+     * URL: /movies/import/{jobId}
+     * Method: GET
+     * Response:
+     * Returns the status and progress of an import job. Example: {"id":"5b0f...","status":"RUNNING","error":null,"progress":{"rowsRead":12000,"rowsWritten":11500,"rowsRejected":3,"elapsedMillis":950,"rowsPerSecond":12105.2}}
+     * In case there are no such job return status code 404.
+     *
+     * @param jobId An import job id
+     * @return The import job
+     */
+    @Operation(summary = "Get the progress of a movie import")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Found the import job", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = ImportJob.class))}), @ApiResponse(responseCode = "404", description = "Import job not found", content = @Content)})
+    @GetMapping("/movies/import/{jobId}")
+    ImportJob getImportJob(@Parameter(description = "id of the import job") @PathVariable String jobId) {
+        return importJobService.getJob(jobId);
     }
 }
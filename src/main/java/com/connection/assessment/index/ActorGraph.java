@@ -0,0 +1,543 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.dto.ActorNeighbourhood;
+import com.connection.assessment.model.dto.ActorPath;
+import com.connection.assessment.model.dto.CoStar;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Movie;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * The bipartite graph of actors and the movies they played in. Like {@link ColumnarMovieStore}, writes go to a map
+ * of movies and mark the graph stale; the next read rebuilds an immutable {@link Snapshot} holding both directions
+ * of the graph as CSR (compressed sparse row) arrays: per actor the offsets into one array of movie positions,
+ * and per movie the offsets into one array of actor positions. A few written movies are merged into the previous
+ * snapshot in linear time, and only many writes or a clear sort and search the edges again. Traversals only touch
+ * primitive arrays, kept in a pool of epoch-stamped {@link Search}es rather than allocated per query.
+ */
+@Component
+public class ActorGraph implements MovieIndex {
+
+    static class Node {
+        final long id;
+        final String title;
+        final long[] actors;
+
+        Node(Movie movie) {
+            id = movie.getId();
+            title = movie.getTitle();
+            actors = movie.getActors() == null ? new long[0]
+                    : movie.getActors().stream().mapToLong(Actor::getId).distinct().toArray();
+        }
+    }
+
+    // below this many written movies, or an eighth of the snapshot, they are merged instead of rebuilding
+    private static final int MIN_REBUILD_CHANGES = 1024;
+
+    private final Map<Long, Node> movies = new ConcurrentHashMap<>();
+    private final Map<Long, String> actorNames = new ConcurrentHashMap<>();
+    // ids written since the last snapshot was taken
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    @Override
+    public void put(Movie movie) {
+        if (movie.getActors() != null) {
+            for (Actor actor : movie.getActors()) {
+                actorNames.put(actor.getId(), actor.getName());
+            }
+        }
+        movies.put(movie.getId(), new Node(movie));
+        changed.add(movie.getId());
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void remove(Long id) {
+        movies.remove(id);
+        changed.add(id);
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void clear() {
+        movies.clear();
+        actorNames.clear();
+        generation.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.version != version.get()) {
+            synchronized (this) {
+                current = snapshot;
+                long latest = version.get();
+                if (current == null || current.version != latest) {
+                    // a write racing with the copy bumps the version again and stays in changed, so it is picked up
+                    // next time; the version is read first so that it never claims a write that is not copied
+                    long latestGeneration = generation.get();
+                    if (current == null || current.generation != latestGeneration
+                            || changed.size() > Math.max(MIN_REBUILD_CHANGES, current.movieIds.length / 8)) {
+                        changed.clear();
+                        current = Snapshot.build(latest, latestGeneration, new ArrayList<>(movies.values()), actorNames);
+                    } else {
+                        current = current.merge(latest, takeChanged(), actorNames);
+                    }
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Takes the written ids, each removed before its node is read so that a later write of it is kept for next time.
+     *
+     * @return The movies written since the last snapshot by id, null for removed ones
+     */
+    private TreeMap<Long, Node> takeChanged() {
+        TreeMap<Long, Node> written = new TreeMap<>();
+        for (Iterator<Long> ids = changed.iterator(); ids.hasNext(); ) {
+            Long id = ids.next();
+            ids.remove();
+            written.put(id, movies.get(id));
+        }
+        return written;
+    }
+
+    /**
+     * @param actorId An actor id
+     * @return true if the actor played in at least one movie
+     */
+    public boolean contains(long actorId) {
+        return snapshot().position(actorId) >= 0;
+    }
+
+    /**
+     * Shortest chain of movies connecting two actors, found with a breadth-first search from both ends.
+     *
+     * @param from An actor id
+     * @param to   Another actor id
+     * @return The chain of actors and the movies linking them, or null if either actor is unknown or they are not
+     * connected
+     */
+    public ActorPath path(long from, long to) {
+        return snapshot().path(from, to);
+    }
+
+    /**
+     * @param actorId An actor id
+     * @param limit   The maximum number of co-stars to return
+     * @return The actors sharing a movie with the actor, most shared movies first, or null if the actor is unknown
+     */
+    public List<CoStar> coStars(long actorId, int limit) {
+        return snapshot().coStars(actorId, limit);
+    }
+
+    /**
+     * @param actorId An actor id
+     * @param hops    The number of co-star links to follow
+     * @return The number of actors first reached at each hop, or null if the actor is unknown
+     */
+    public ActorNeighbourhood neighbourhood(long actorId, int hops) {
+        return snapshot().neighbourhood(actorId, hops);
+    }
+
+    /**
+     * Immutable CSR copy of the graph. Actors and movies are addressed by their position in the sorted id arrays.
+     */
+    static class Snapshot {
+        final long version;
+        final long generation;
+        final long[] actorIds;
+        final String[] actorNames;
+        final int[] actorOffsets;
+        final int[] actorMovies;
+        final long[] movieIds;
+        final String[] movieTitles;
+        final int[] movieOffsets;
+        final int[] movieActors;
+
+        /**
+         * Derives the actor side of the graph from the movie side with a counting pass over the edges.
+         */
+        private Snapshot(long version, long generation, long[] movieIds, String[] movieTitles, int[] movieOffsets,
+                         int[] movieActors, long[] actorIds, String[] actorNames) {
+            this.version = version;
+            this.generation = generation;
+            this.movieIds = movieIds;
+            this.movieTitles = movieTitles;
+            this.movieOffsets = movieOffsets;
+            this.movieActors = movieActors;
+            this.actorIds = actorIds;
+            this.actorNames = actorNames;
+
+            actorOffsets = new int[actorIds.length + 1];
+            for (int actor : movieActors) {
+                actorOffsets[actor + 1]++;
+            }
+            for (int a = 0; a < actorIds.length; a++) {
+                actorOffsets[a + 1] += actorOffsets[a];
+            }
+            actorMovies = new int[movieActors.length];
+            int[] next = Arrays.copyOf(actorOffsets, actorIds.length);
+            for (int m = 0; m < movieIds.length; m++) {
+                for (int e = movieOffsets[m]; e < movieOffsets[m + 1]; e++) {
+                    actorMovies[next[movieActors[e]]++] = m;
+                }
+            }
+        }
+
+        static Snapshot build(long version, long generation, List<Node> nodes, Map<Long, String> names) {
+            nodes.sort(Comparator.comparingLong(node -> node.id));
+            int movieCount = nodes.size();
+            long[] movieIds = new long[movieCount];
+            String[] movieTitles = new String[movieCount];
+            int[] movieOffsets = new int[movieCount + 1];
+            for (int m = 0; m < movieCount; m++) {
+                Node node = nodes.get(m);
+                movieIds[m] = node.id;
+                movieTitles[m] = node.title;
+                movieOffsets[m + 1] = movieOffsets[m] + node.actors.length;
+            }
+
+            long[] edges = new long[movieOffsets[movieCount]];
+            for (int m = 0; m < movieCount; m++) {
+                System.arraycopy(nodes.get(m).actors, 0, edges, movieOffsets[m], nodes.get(m).actors.length);
+            }
+            long[] actorIds = Arrays.stream(edges).sorted().distinct().toArray();
+            String[] actorNames = new String[actorIds.length];
+            for (int a = 0; a < actorIds.length; a++) {
+                actorNames[a] = names.get(actorIds[a]);
+            }
+
+            int[] movieActors = new int[edges.length];
+            for (int e = 0; e < edges.length; e++) {
+                movieActors[e] = Arrays.binarySearch(actorIds, edges[e]);
+            }
+            return new Snapshot(version, generation, movieIds, movieTitles, movieOffsets, movieActors, actorIds, actorNames);
+        }
+
+        /**
+         * Derives the next snapshot from this one in linear time: unchanged movies keep their edges, remapped to
+         * the new actor positions, and only the actors of the written movies are sorted and searched.
+         *
+         * @param version The version of the new snapshot
+         * @param written The movies written since this snapshot by id, null for removed ones
+         * @param names   Actor names by id
+         * @return A snapshot with the written movies merged in
+         */
+        Snapshot merge(long version, TreeMap<Long, Node> written, Map<Long, String> names) {
+            // edges left per actor once the old edges of the written movies are dropped
+            int[] degree = new int[actorIds.length];
+            for (int a = 0; a < actorIds.length; a++) {
+                degree[a] = actorOffsets[a + 1] - actorOffsets[a];
+            }
+            int movieCount = movieIds.length;
+            int edgeCount = movieActors.length;
+            LongStream.Builder writtenActors = LongStream.builder();
+            for (Map.Entry<Long, Node> entry : written.entrySet()) {
+                int m = Arrays.binarySearch(movieIds, entry.getKey());
+                if (m >= 0) {
+                    movieCount--;
+                    edgeCount -= movieOffsets[m + 1] - movieOffsets[m];
+                    for (int e = movieOffsets[m]; e < movieOffsets[m + 1]; e++) {
+                        degree[movieActors[e]]--;
+                    }
+                }
+                Node node = entry.getValue();
+                if (node != null) {
+                    movieCount++;
+                    edgeCount += node.actors.length;
+                    for (long actor : node.actors) {
+                        writtenActors.add(actor);
+                    }
+                }
+            }
+            long[] added = writtenActors.build().sorted().distinct().toArray();
+
+            // actors that keep an edge, merged with the actors of the written movies
+            long[] mergedActorIds = new long[actorIds.length + added.length];
+            String[] mergedActorNames = new String[mergedActorIds.length];
+            int[] position = new int[actorIds.length];
+            int actorCount = 0;
+            for (int a = 0, n = 0; a < actorIds.length || n < added.length; ) {
+                if (n == added.length || (a < actorIds.length && actorIds[a] < added[n])) {
+                    if (degree[a] > 0) {
+                        position[a] = actorCount;
+                        mergedActorIds[actorCount] = actorIds[a];
+                        mergedActorNames[actorCount++] = actorNames[a];
+                    } else {
+                        position[a] = -1;
+                    }
+                    a++;
+                } else {
+                    if (a < actorIds.length && actorIds[a] == added[n]) {
+                        position[a++] = actorCount;
+                    }
+                    mergedActorIds[actorCount] = added[n];
+                    mergedActorNames[actorCount++] = names.get(added[n++]);
+                }
+            }
+            mergedActorIds = Arrays.copyOf(mergedActorIds, actorCount);
+            mergedActorNames = Arrays.copyOf(mergedActorNames, actorCount);
+
+            long[] mergedIds = new long[movieCount];
+            String[] mergedTitles = new String[movieCount];
+            int[] mergedOffsets = new int[movieCount + 1];
+            int[] mergedActors = new int[edgeCount];
+            Iterator<Map.Entry<Long, Node>> entries = written.entrySet().iterator();
+            Map.Entry<Long, Node> entry = entries.hasNext() ? entries.next() : null;
+            int count = 0;
+            for (int m = 0; m < movieIds.length || entry != null; ) {
+                int e = mergedOffsets[count];
+                if (entry == null || (m < movieIds.length && movieIds[m] < entry.getKey())) {
+                    mergedIds[count] = movieIds[m];
+                    mergedTitles[count] = movieTitles[m];
+                    for (int j = movieOffsets[m]; j < movieOffsets[m + 1]; j++) {
+                        mergedActors[e++] = position[movieActors[j]];
+                    }
+                    mergedOffsets[++count] = e;
+                    m++;
+                } else {
+                    if (m < movieIds.length && movieIds[m] == entry.getKey()) {
+                        m++;
+                    }
+                    Node node = entry.getValue();
+                    if (node != null) {
+                        mergedIds[count] = node.id;
+                        mergedTitles[count] = node.title;
+                        for (long actor : node.actors) {
+                            mergedActors[e++] = Arrays.binarySearch(mergedActorIds, actor);
+                        }
+                        mergedOffsets[++count] = e;
+                    }
+                    entry = entries.hasNext() ? entries.next() : null;
+                }
+            }
+            return new Snapshot(version, generation, mergedIds, mergedTitles, mergedOffsets, mergedActors,
+                    mergedActorIds, mergedActorNames);
+        }
+
+        int position(long actorId) {
+            int position = Arrays.binarySearch(actorIds, actorId);
+            return position < 0 ? -1 : position;
+        }
+
+        ActorPath path(long fromId, long toId) {
+            int from = position(fromId);
+            int to = position(toId);
+            if (from < 0 || to < 0) return null;
+            if (from == to) {
+                return new ActorPath(0, Collections.singletonList(step(from, -1)));
+            }
+
+            Search forward = Search.acquire(actorIds.length, from);
+            Search backward = Search.acquire(actorIds.length, to);
+            try {
+                int meet = -1;
+                while (meet < 0 && forward.size > 0 && backward.size > 0) {
+                    // grow the smaller frontier; a whole level is expanded so the shortest meeting point wins
+                    meet = forward.size <= backward.size ? expand(forward, backward) : expand(backward, forward);
+                }
+                if (meet < 0) return null;
+
+                List<ActorPath.Step> steps = new ArrayList<>();
+                for (int actor = meet; actor != from; actor = forward.parent[actor]) {
+                    steps.add(step(forward.parent[actor], forward.via[actor]));
+                }
+                Collections.reverse(steps);
+                for (int actor = meet; actor != to; actor = backward.parent[actor]) {
+                    steps.add(step(actor, backward.via[actor]));
+                }
+                steps.add(step(to, -1));
+                return new ActorPath(steps.size() - 1, steps);
+            } finally {
+                forward.release();
+                backward.release();
+            }
+        }
+
+        /**
+         * Expands one level of {@code search}.
+         *
+         * @return The actor reached from both ends on the shortest combined path, or -1 if the searches did not meet
+         */
+        private int expand(Search search, Search other) {
+            int meet = -1;
+            int best = Integer.MAX_VALUE;
+            for (int f = 0; f < search.size; f++) {
+                int actor = search.frontier[f];
+                for (int i = actorOffsets[actor]; i < actorOffsets[actor + 1]; i++) {
+                    int movie = actorMovies[i];
+                    for (int j = movieOffsets[movie]; j < movieOffsets[movie + 1]; j++) {
+                        int costar = movieActors[j];
+                        if (search.depth(costar) >= 0) continue;
+                        search.visit(costar, actor, movie);
+                        if (other.depth(costar) >= 0 && search.depth(costar) + other.depth(costar) < best) {
+                            best = search.depth(costar) + other.depth(costar);
+                            meet = costar;
+                        }
+                    }
+                }
+            }
+            search.advance();
+            return meet;
+        }
+
+        List<CoStar> coStars(long actorId, int limit) {
+            int actor = position(actorId);
+            if (actor < 0) return null;
+            Map<Integer, int[]> shared = new HashMap<>();
+            for (int i = actorOffsets[actor]; i < actorOffsets[actor + 1]; i++) {
+                int movie = actorMovies[i];
+                for (int j = movieOffsets[movie]; j < movieOffsets[movie + 1]; j++) {
+                    if (movieActors[j] != actor) {
+                        shared.computeIfAbsent(movieActors[j], costar -> new int[1])[0]++;
+                    }
+                }
+            }
+            List<CoStar> coStars = new ArrayList<>(shared.size());
+            for (Map.Entry<Integer, int[]> entry : shared.entrySet()) {
+                coStars.add(new CoStar(actorIds[entry.getKey()], actorNames[entry.getKey()], entry.getValue()[0]));
+            }
+            coStars.sort(Comparator.comparingInt(CoStar::getSharedMovies).reversed()
+                    .thenComparing(CoStar::getName, Comparator.nullsLast(Comparator.naturalOrder())));
+            return coStars.size() > limit ? new ArrayList<>(coStars.subList(0, limit)) : coStars;
+        }
+
+        ActorNeighbourhood neighbourhood(long actorId, int hops) {
+            int actor = position(actorId);
+            if (actor < 0) return null;
+            Search search = Search.acquire(actorIds.length, actor);
+            try {
+                List<Integer> counts = new ArrayList<>(hops);
+                long total = 0;
+                for (int hop = 1; hop <= hops; hop++) {
+                    for (int f = 0; f < search.size; f++) {
+                        int current = search.frontier[f];
+                        for (int i = actorOffsets[current]; i < actorOffsets[current + 1]; i++) {
+                            int movie = actorMovies[i];
+                            for (int j = movieOffsets[movie]; j < movieOffsets[movie + 1]; j++) {
+                                if (search.depth(movieActors[j]) < 0) search.visit(movieActors[j], current, movie);
+                            }
+                        }
+                    }
+                    search.advance();
+                    if (search.size == 0) break;
+                    counts.add(search.size);
+                    total += search.size;
+                }
+                return new ActorNeighbourhood(actorId, counts, total);
+            } finally {
+                search.release();
+            }
+        }
+
+        private ActorPath.Step step(int actor, int movie) {
+            return new ActorPath.Step(actorIds[actor], actorNames[actor],
+                    movie < 0 ? null : movieIds[movie], movie < 0 ? null : movieTitles[movie]);
+        }
+    }
+
+    /**
+     * State of one breadth-first search: depth, parent and linking movie per actor, the current frontier and the
+     * next one. Searches are pooled and reused by later queries; an actor's slots only belong to the current search
+     * if they are stamped with its epoch, so reuse does not clear the arrays.
+     */
+    private static class Search {
+        private static final Queue<Search> POOL = new ConcurrentLinkedQueue<>();
+
+        private int[] stamp = new int[0];
+        private int[] depth;
+        int[] parent;
+        int[] via;
+        int[] frontier;
+        private int[] next;
+        private int epoch;
+        int size;
+        private int nextSize;
+
+        /**
+         * @param actors The number of actors in the graph searched
+         * @param start  The position of the actor the search starts from
+         * @return A pooled search, to be released when the query is done
+         */
+        static Search acquire(int actors, int start) {
+            Search search = POOL.poll();
+            if (search == null) search = new Search();
+            search.reset(actors, start);
+            return search;
+        }
+
+        void release() {
+            POOL.offer(this);
+        }
+
+        private void reset(int actors, int start) {
+            if (stamp.length < actors) {
+                stamp = new int[actors];
+                depth = new int[actors];
+                parent = new int[actors];
+                via = new int[actors];
+                frontier = new int[actors];
+                next = new int[actors];
+                epoch = 0;
+            }
+            if (++epoch == 0) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+            stamp[start] = epoch;
+            depth[start] = 0;
+            frontier[0] = start;
+            size = 1;
+            nextSize = 0;
+        }
+
+        /**
+         * @return The depth at which the search reached the actor, or -1 if it did not
+         */
+        int depth(int actor) {
+            return stamp[actor] == epoch ? depth[actor] : -1;
+        }
+
+        void visit(int actor, int from, int movie) {
+            stamp[actor] = epoch;
+            depth[actor] = depth[from] + 1;
+            parent[actor] = from;
+            via[actor] = movie;
+            next[nextSize++] = actor;
+        }
+
+        /**
+         * Makes the actors visited since the last call the frontier.
+         */
+        void advance() {
+            int[] visited = next;
+            next = frontier;
+            frontier = visited;
+            size = nextSize;
+            nextSize = 0;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.dto.MovieSummary;
+import com.connection.assessment.model.dto.RangeFilterResult;
+import com.connection.assessment.model.dto.CorrelationStats;
+import com.connection.assessment.model.dto.GroupStats;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Numeric movie fields kept as primitive columns, off the entity graph. Writes go to a map of rows and mark the
+ * columns stale; the next read builds an immutable {@link Snapshot} with one sorted copy and permutation per
+ * column, which range predicates binary search. A few written rows are merged into the previous snapshot in linear
+ * time, and only many writes or a clear sort the columns again. Genres, directors and years are dictionary encoded
+ * into {@link Grouping}s for aggregations.
+ */
+@Component
+public class ColumnarMovieStore implements MovieIndex {
+
+    public enum Column {
+        YEAR, RUNTIME, RATING, VOTES, REVENUE, METASCORE;
+
+        public static Column of(String name) {
+            switch (name) {
+                case "year":
+                case "releaseYear":
+                    return YEAR;
+                case "runtime":
+                    return RUNTIME;
+                case "rating":
+                    return RATING;
+                case "votes":
+                    return VOTES;
+                case "revenue":
+                    return REVENUE;
+                case "metascore":
+                case "metaScore":
+                    return METASCORE;
+                default:
+                    throw new IllegalArgumentException("Unknown column: " + name);
+            }
+        }
+    }
+
+    /**
+     * An inclusive range on a column. Movies without a value for the column never match.
+     */
+    public static class Range {
+        final Column column;
+        final double min;
+        final double max;
+
+        public Range(Column column, double min, double max) {
+            this.column = column;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    static class Row {
+        final long id;
+        final String title;
+        final double[] values = new double[Column.values().length];
+        final String[] genres;
+        final String director;
+
+        Row(Movie movie) {
+            id = movie.getId();
+            title = movie.getTitle();
+            genres = movie.getGenres() == null ? new String[0] : movie.getGenres().stream().map(Genre::getCode).toArray(String[]::new);
+            director = movie.getDirector() == null ? null : movie.getDirector().getName();
+            values[Column.YEAR.ordinal()] = value(movie.getReleaseYear());
+            values[Column.RUNTIME.ordinal()] = value(movie.getRuntime());
+            values[Column.RATING.ordinal()] = value(movie.getRating());
+            values[Column.VOTES.ordinal()] = value(movie.getVotes());
+            values[Column.REVENUE.ordinal()] = value(movie.getRevenue());
+            values[Column.METASCORE.ordinal()] = value(movie.getMetaScore());
+        }
+
+        Row(Row row, double rating, int votes) {
+            id = row.id;
+            title = row.title;
+            genres = row.genres;
+            director = row.director;
+            System.arraycopy(row.values, 0, values, 0, values.length);
+            values[Column.RATING.ordinal()] = rating;
+            values[Column.VOTES.ordinal()] = votes;
+        }
+
+        private static double value(Number number) {
+            return number == null ? Double.NaN : number.doubleValue();
+        }
+    }
+
+    // below this many written rows, or an eighth of the snapshot, they are merged instead of rebuilding
+    private static final int MIN_REBUILD_CHANGES = 1024;
+    // heap of the first matches of a range filter, reused by each request thread
+    private static final ThreadLocal<int[]> FIRST_ROWS = ThreadLocal.withInitial(() -> new int[64]);
+
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+    // ids written since the last snapshot was taken
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    @Override
+    public void put(Movie movie) {
+        rows.put(movie.getId(), new Row(movie));
+        changed.add(movie.getId());
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void votesChanged(Long id, double rating, int votes) {
+        if (rows.computeIfPresent(id, (key, row) -> new Row(row, rating, votes)) != null) {
+            changed.add(id);
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        rows.remove(id);
+        changed.add(id);
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void clear() {
+        rows.clear();
+        generation.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.version != version.get()) {
+            synchronized (this) {
+                current = snapshot;
+                long latest = version.get();
+                if (current == null || current.version != latest) {
+                    // a write racing with the copy bumps the version again and stays in changed, so it is picked up
+                    // next time; the version is read first so that it never claims a write that is not copied
+                    long latestGeneration = generation.get();
+                    if (current == null || current.generation != latestGeneration
+                            || changed.size() > Math.max(MIN_REBUILD_CHANGES, current.size / 8)) {
+                        changed.clear();
+                        current = Snapshot.build(latest, latestGeneration, new ArrayList<>(rows.values()));
+                    } else {
+                        current = current.merge(latest, takeChanged());
+                    }
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Takes the written ids, each removed before its row is read so that a later write of it is kept for next time.
+     *
+     * @return The rows written since the last snapshot by id, null for removed ones
+     */
+    private TreeMap<Long, Row> takeChanged() {
+        TreeMap<Long, Row> written = new TreeMap<>();
+        for (Iterator<Long> ids = changed.iterator(); ids.hasNext(); ) {
+            Long id = ids.next();
+            ids.remove();
+            written.put(id, rows.get(id));
+        }
+        return written;
+    }
+
+    /**
+     * @param ranges Ranges a movie must all be in
+     * @param limit  The maximum number of movies to return
+     * @return The number of matching movies and the first {@code limit} of them by id
+     */
+    public RangeFilterResult filter(List<Range> ranges, int limit) {
+        return snapshot().filter(ranges, limit);
+    }
+
+    /**
+     * @return Count, average rating and total revenue per genre, by genre
+     */
+    public List<GroupStats> statsByGenre() {
+        Snapshot current = snapshot();
+        return current.stats(current.genres);
+    }
+
+    /**
+     * @return Count, average rating and total revenue per director, by director
+     */
+    public List<GroupStats> statsByDirector() {
+        Snapshot current = snapshot();
+        return current.stats(current.directors);
+    }
+
+    /**
+     * @return Count, average rating and total revenue per release year, by year
+     */
+    public List<GroupStats> statsByYear() {
+        Snapshot current = snapshot();
+        return current.stats(current.years);
+    }
+
+    /**
+     * @return Pearson correlation of metascore and rating over the movies that have both
+     */
+    public CorrelationStats metaScoreRatingCorrelation() {
+        return snapshot().correlation(Column.METASCORE, Column.RATING);
+    }
+
+    /**
+     * Immutable columnar copy of all rows, sorted by id. Row positions are shared by all columns.
+     */
+    static class Snapshot {
+        final long version;
+        final long generation;
+        final int size;
+        final Row[] rows;
+        final long[] ids;
+        final String[] titles;
+        final double[][] columns;
+        final double[][] sortedValues;
+        final int[][] sortedRows;
+        final Grouping genres;
+        final Grouping directors;
+        final Grouping years;
+
+        /**
+         * Copies the rows into columns, and sorts the columns unless {@code sortedRows} already holds them.
+         */
+        private Snapshot(long version, long generation, Row[] rows, double[][] sortedValues, int[][] sortedRows) {
+            this.version = version;
+            this.generation = generation;
+            this.rows = rows;
+            size = rows.length;
+            ids = new long[size];
+            titles = new String[size];
+            int columnCount = Column.values().length;
+            columns = new double[columnCount][size];
+            for (int r = 0; r < size; r++) {
+                Row row = rows[r];
+                ids[r] = row.id;
+                titles[r] = row.title;
+                for (int c = 0; c < columnCount; c++) {
+                    columns[c][r] = row.values[c];
+                }
+            }
+
+            if (sortedRows == null) {
+                sortedValues = new double[columnCount][];
+                sortedRows = new int[columnCount][];
+                for (int c = 0; c < columnCount; c++) {
+                    double[] column = columns[c];
+                    int[] order = new int[size];
+                    int present = 0;
+                    for (int r = 0; r < size; r++) {
+                        if (!Double.isNaN(column[r])) order[present++] = r;
+                    }
+                    sortByValue(order, present, column);
+                    sortedRows[c] = Arrays.copyOf(order, present);
+                    sortedValues[c] = new double[present];
+                    for (int i = 0; i < present; i++) {
+                        sortedValues[c][i] = column[order[i]];
+                    }
+                }
+            }
+            this.sortedValues = sortedValues;
+            this.sortedRows = sortedRows;
+
+            List<Row> list = Arrays.asList(rows);
+            genres = Grouping.of(list, row -> row.genres);
+            directors = Grouping.of(list, row -> row.director == null ? new String[0] : new String[]{row.director});
+            years = Grouping.of(list, row -> Double.isNaN(row.values[Column.YEAR.ordinal()])
+                    ? new String[0] : new String[]{String.valueOf((int) row.values[Column.YEAR.ordinal()])});
+        }
+
+        static Snapshot build(long version, long generation, List<Row> rows) {
+            rows.sort(Comparator.comparingLong(row -> row.id));
+            return new Snapshot(version, generation, rows.toArray(new Row[0]), null, null);
+        }
+
+        /**
+         * Derives the next snapshot from this one in linear time: the rows of unchanged ids keep their order and
+         * their place in the sorted columns, and only the written rows are sorted and merged in.
+         *
+         * @param version The version of the new snapshot
+         * @param written Rows written since this snapshot by id, null for removed ones
+         * @return The new snapshot
+         */
+        Snapshot merge(long version, TreeMap<Long, Row> written) {
+            Row[] merged = new Row[size + written.size()];
+            // new positions of this snapshot's rows, -1 for rows that were written, and of the written rows
+            int[] kept = new int[size];
+            int[] added = new int[written.size()];
+            int count = 0;
+            int r = 0;
+            int a = 0;
+            for (Map.Entry<Long, Row> entry : written.entrySet()) {
+                long id = entry.getKey();
+                while (r < size && ids[r] < id) {
+                    kept[r] = count;
+                    merged[count++] = rows[r++];
+                }
+                if (r < size && ids[r] == id) kept[r++] = -1;
+                if (entry.getValue() != null) {
+                    added[a++] = count;
+                    merged[count++] = entry.getValue();
+                }
+            }
+            while (r < size) {
+                kept[r] = count;
+                merged[count++] = rows[r++];
+            }
+
+            int columnCount = Column.values().length;
+            double[][] mergedValues = new double[columnCount][];
+            int[][] mergedRows = new int[columnCount][];
+            // indexes into added, sorted by the value of the written row
+            int[] order = new int[a];
+            double[] values = new double[a];
+            for (int c = 0; c < columnCount; c++) {
+                int present = 0;
+                for (int i = 0; i < a; i++) {
+                    values[i] = merged[added[i]].values[c];
+                    if (!Double.isNaN(values[i])) order[present++] = i;
+                }
+                sortByValue(order, present, values);
+
+                int[] oldRows = sortedRows[c];
+                int[] newRows = new int[oldRows.length + present];
+                double[] newValues = new double[oldRows.length + present];
+                int n = 0;
+                int i = 0;
+                int j = 0;
+                while (i < oldRows.length || j < present) {
+                    if (i < oldRows.length && kept[oldRows[i]] < 0) {
+                        i++;
+                    } else if (j == present || (i < oldRows.length && sortedValues[c][i] <= values[order[j]])) {
+                        newRows[n] = kept[oldRows[i]];
+                        newValues[n++] = sortedValues[c][i++];
+                    } else {
+                        newRows[n] = added[order[j]];
+                        newValues[n++] = values[order[j++]];
+                    }
+                }
+                mergedRows[c] = Arrays.copyOf(newRows, n);
+                mergedValues[c] = Arrays.copyOf(newValues, n);
+            }
+            return new Snapshot(version, generation, Arrays.copyOf(merged, count), mergedValues, mergedRows);
+        }
+
+        /**
+         * Sorts row positions by their value in a column with a bottom-up merge sort on primitives.
+         */
+        static void sortByValue(int[] rows, int length, double[] column) {
+            int[] from = rows;
+            int[] to = new int[length];
+            for (int width = 1; width < length; width *= 2) {
+                for (int lo = 0; lo < length; lo += 2 * width) {
+                    int mid = Math.min(lo + width, length);
+                    int hi = Math.min(lo + 2 * width, length);
+                    int left = lo;
+                    int right = mid;
+                    int k = lo;
+                    while (left < mid && right < hi) {
+                        to[k++] = column[from[right]] < column[from[left]] ? from[right++] : from[left++];
+                    }
+                    while (left < mid) to[k++] = from[left++];
+                    while (right < hi) to[k++] = from[right++];
+                }
+                int[] swap = from;
+                from = to;
+                to = swap;
+            }
+            if (from != rows) System.arraycopy(from, 0, rows, 0, length);
+        }
+
+        List<GroupStats> stats(Grouping grouping) {
+            GroupAggregation.Totals totals = ForkJoinPool.commonPool().invoke(new GroupAggregation(this, grouping, 0, size));
+            List<GroupStats> stats = new ArrayList<>(grouping.names.length);
+            for (int g = 0; g < grouping.names.length; g++) {
+                stats.add(new GroupStats(grouping.names[g], totals.count[g],
+                        totals.rated[g] == 0 ? null : totals.ratingSum[g] / totals.rated[g], totals.revenueSum[g]));
+            }
+            stats.sort(Comparator.comparing(GroupStats::getKey));
+            return stats;
+        }
+
+        CorrelationStats correlation(Column first, Column second) {
+            double[] x = columns[first.ordinal()];
+            double[] y = columns[second.ordinal()];
+            // n, sum x, sum y, sum x*x, sum y*y, sum x*y
+            double[] sums = IntStream.range(0, size).parallel()
+                    .filter(r -> !Double.isNaN(x[r]) && !Double.isNaN(y[r]))
+                    .collect(() -> new double[6], (acc, r) -> {
+                        acc[0]++;
+                        acc[1] += x[r];
+                        acc[2] += y[r];
+                        acc[3] += x[r] * x[r];
+                        acc[4] += y[r] * y[r];
+                        acc[5] += x[r] * y[r];
+                    }, (a, b) -> {
+                        for (int i = 0; i < a.length; i++) a[i] += b[i];
+                    });
+            double n = sums[0];
+            double denominator = Math.sqrt((n * sums[3] - sums[1] * sums[1]) * (n * sums[4] - sums[2] * sums[2]));
+            Double pearson = n < 2 || denominator == 0 ? null : (n * sums[5] - sums[1] * sums[2]) / denominator;
+            return new CorrelationStats((long) n, pearson);
+        }
+
+        RangeFilterResult filter(List<Range> ranges, int limit) {
+            if (ranges.isEmpty()) {
+                List<MovieSummary> movies = new ArrayList<>(Math.min(limit, size));
+                for (int row = 0; row < size && row < limit; row++) movies.add(summary(row));
+                return new RangeFilterResult(size, movies);
+            }
+
+            // drive with the most selective range and check the others against the columns
+            Range driver = null;
+            int from = 0;
+            int to = 0;
+            for (Range range : ranges) {
+                double[] sorted = sortedValues[range.column.ordinal()];
+                int lo = lowerBound(sorted, range.min);
+                int hi = upperBound(sorted, range.max);
+                if (driver == null || hi - lo < to - from) {
+                    driver = range;
+                    from = lo;
+                    to = Math.max(lo, hi);
+                }
+            }
+
+            // rows are positions in id order, so the first movies by id are the smallest matching rows; they are
+            // kept in a max-heap of at most limit rows while all matches are counted
+            int[] heap = FIRST_ROWS.get();
+            if (heap.length < limit) {
+                heap = new int[limit];
+                FIRST_ROWS.set(heap);
+            }
+            int[] candidates = sortedRows[driver.column.ordinal()];
+            int count = 0;
+            int kept = 0;
+            for (int i = from; i < to; i++) {
+                int row = candidates[i];
+                if (!matchesAll(ranges, row)) continue;
+                count++;
+                if (kept < limit) {
+                    siftUp(heap, kept++, row);
+                } else if (row < heap[0]) {
+                    siftDown(heap, kept, row);
+                }
+            }
+            Arrays.sort(heap, 0, kept);
+
+            List<MovieSummary> movies = new ArrayList<>(kept);
+            for (int i = 0; i < kept; i++) movies.add(summary(heap[i]));
+            return new RangeFilterResult(count, movies);
+        }
+
+        private MovieSummary summary(int row) {
+            return new MovieSummary(ids[row], titles[row], intValue(columns[Column.YEAR.ordinal()][row]),
+                    doubleValue(columns[Column.RATING.ordinal()][row]));
+        }
+
+        private static void siftUp(int[] heap, int index, int row) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent] >= row) break;
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = row;
+        }
+
+        /**
+         * Replaces the largest row of the heap.
+         */
+        private static void siftDown(int[] heap, int size, int row) {
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) break;
+                if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+                if (heap[child] <= row) break;
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = row;
+        }
+
+        private boolean matchesAll(List<Range> ranges, int row) {
+            for (int i = 0; i < ranges.size(); i++) {
+                Range range = ranges.get(i);
+                double value = columns[range.column.ordinal()][row];
+                // NaN, a missing value, fails both comparisons
+                if (!(value >= range.min && value <= range.max)) return false;
+            }
+            return true;
+        }
+
+        private static int lowerBound(double[] sorted, double value) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] < value) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private static int upperBound(double[] sorted, double value) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] <= value) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        static Integer intValue(double value) {
+            return Double.isNaN(value) ? null : (int) value;
+        }
+
+        static Double doubleValue(double value) {
+            return Double.isNaN(value) ? null : value;
+        }
+    }
+}
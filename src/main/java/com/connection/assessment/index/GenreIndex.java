@@ -0,0 +1,151 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed bitmap of movie ids per genre. Genre filters are answered with bitwise operations on the bitmaps
+ * instead of join queries. Genre codes are matched case-insensitively.
+ */
+@Component
+public class GenreIndex implements MovieIndex {
+
+    public enum Op {
+        AND, OR
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, RoaringBitmap> moviesByGenre = new HashMap<>();
+    private final Map<String, String> codes = new TreeMap<>();
+    private final Map<Integer, String[]> genresByMovie = new HashMap<>();
+    private final RoaringBitmap allMovies = new RoaringBitmap();
+
+    @Override
+    public void put(Movie movie) {
+        lock.writeLock().lock();
+        try {
+            int id = Math.toIntExact(movie.getId());
+            unindex(id);
+            Collection<Genre> genres = movie.getGenres();
+            String[] keys = new String[genres == null ? 0 : genres.size()];
+            int i = 0;
+            if (genres != null) {
+                for (Genre genre : genres) {
+                    String key = key(genre.getCode());
+                    codes.putIfAbsent(key, genre.getCode());
+                    moviesByGenre.computeIfAbsent(key, k -> new RoaringBitmap()).add(id);
+                    keys[i++] = key;
+                }
+            }
+            genresByMovie.put(id, keys);
+            allMovies.add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(Math.toIntExact(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            moviesByGenre.clear();
+            codes.clear();
+            genresByMovie.clear();
+            allMovies.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(int id) {
+        String[] keys = genresByMovie.remove(id);
+        if (keys != null) {
+            for (String key : keys) {
+                moviesByGenre.get(key).remove(id);
+            }
+        }
+        allMovies.remove(id);
+    }
+
+    /**
+     * Combines genres with bitwise operations.
+     *
+     * @param genres  Genres to combine, all movies if empty
+     * @param op      Whether a movie needs all or any of the {@code genres}
+     * @param exclude Genres a movie must not have
+     * @return Ids of the matching movies
+     */
+    public RoaringBitmap query(Collection<String> genres, Op op, Collection<String> exclude) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = null;
+            for (String genre : genres) {
+                RoaringBitmap movies = moviesByGenre.getOrDefault(key(genre), new RoaringBitmap());
+                if (result == null) {
+                    result = movies.clone();
+                } else if (op == Op.AND) {
+                    result.and(movies);
+                } else {
+                    result.or(movies);
+                }
+            }
+            if (result == null) {
+                result = allMovies.clone();
+            }
+            for (String genre : exclude) {
+                RoaringBitmap movies = moviesByGenre.get(key(genre));
+                if (movies != null) {
+                    result.andNot(movies);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param movies Ids of movies, for example the result of {@link #query}
+     * @return The number of {@code movies} in each genre that has at least one of them
+     */
+    public Map<String, Integer> countByGenre(RoaringBitmap movies) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Map.Entry<String, String> code : codes.entrySet()) {
+                int count = RoaringBitmap.andCardinality(moviesByGenre.get(code.getKey()), movies);
+                if (count > 0) {
+                    counts.put(code.getValue(), count);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String key(String code) {
+        return code.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,80 @@
+package com.connection.assessment.index;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join aggregation of count, rating and revenue per group over a range of snapshot rows. Ranges are split
+ * in halves until they are small enough to sum sequentially into per-group arrays, which are then merged.
+ */
+class GroupAggregation extends RecursiveTask<GroupAggregation.Totals> {
+
+    private static final int THRESHOLD = 4096;
+
+    static class Totals {
+        final long[] count;
+        final long[] rated;
+        final double[] ratingSum;
+        final double[] revenueSum;
+
+        Totals(int groups) {
+            count = new long[groups];
+            rated = new long[groups];
+            ratingSum = new double[groups];
+            revenueSum = new double[groups];
+        }
+
+        Totals merge(Totals other) {
+            for (int g = 0; g < count.length; g++) {
+                count[g] += other.count[g];
+                rated[g] += other.rated[g];
+                ratingSum[g] += other.ratingSum[g];
+                revenueSum[g] += other.revenueSum[g];
+            }
+            return this;
+        }
+    }
+
+    private final ColumnarMovieStore.Snapshot snapshot;
+    private final Grouping grouping;
+    private final int from;
+    private final int to;
+
+    GroupAggregation(ColumnarMovieStore.Snapshot snapshot, Grouping grouping, int from, int to) {
+        this.snapshot = snapshot;
+        this.grouping = grouping;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Totals compute() {
+        if (to - from <= THRESHOLD) {
+            return sum();
+        }
+        int mid = (from + to) >>> 1;
+        GroupAggregation left = new GroupAggregation(snapshot, grouping, from, mid);
+        left.fork();
+        Totals right = new GroupAggregation(snapshot, grouping, mid, to).compute();
+        return right.merge(left.join());
+    }
+
+    private Totals sum() {
+        Totals totals = new Totals(grouping.names.length);
+        double[] ratings = snapshot.columns[ColumnarMovieStore.Column.RATING.ordinal()];
+        double[] revenues = snapshot.columns[ColumnarMovieStore.Column.REVENUE.ordinal()];
+        for (int r = from; r < to; r++) {
+            for (int i = grouping.offsets[r]; i < grouping.offsets[r + 1]; i++) {
+                int g = grouping.groups[i];
+                totals.count[g]++;
+                if (!Double.isNaN(ratings[r])) {
+                    totals.rated[g]++;
+                    totals.ratingSum[g] += ratings[r];
+                }
+                if (!Double.isNaN(revenues[r])) {
+                    totals.revenueSum[g] += revenues[r];
+                }
+            }
+        }
+        return totals;
+    }
+}
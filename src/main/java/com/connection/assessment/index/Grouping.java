@@ -0,0 +1,48 @@
+package com.connection.assessment.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Dictionary encoded many-to-many assignment of snapshot rows to groups: the groups of row {@code r} are
+ * {@code groups[offsets[r]]} up to {@code groups[offsets[r + 1]]}, indexes into {@code names}.
+ */
+final class Grouping {
+    final String[] names;
+    final int[] offsets;
+    final int[] groups;
+
+    private Grouping(String[] names, int[] offsets, int[] groups) {
+        this.names = names;
+        this.offsets = offsets;
+        this.groups = groups;
+    }
+
+    static Grouping of(List<ColumnarMovieStore.Row> rows, Function<ColumnarMovieStore.Row, String[]> keys) {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] offsets = new int[rows.size() + 1];
+        int[] groups = new int[rows.size()];
+        int count = 0;
+        for (int r = 0; r < rows.size(); r++) {
+            for (String key : keys.apply(rows.get(r))) {
+                Integer group = dictionary.get(key);
+                if (group == null) {
+                    group = names.size();
+                    dictionary.put(key, group);
+                    names.add(key);
+                }
+                if (count == groups.length) {
+                    groups = Arrays.copyOf(groups, Math.max(16, count * 2));
+                }
+                groups[count++] = group;
+            }
+            offsets[r + 1] = count;
+        }
+        return new Grouping(names.toArray(new String[0]), offsets, Arrays.copyOf(groups, count));
+    }
+}
@@ -0,0 +1,183 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.dto.TopMovie;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Top movies by rating, revenue and votes, over all movies and per genre, release year, and genre and year. Every
+ * board is a {@link ConcurrentSkipListSet} kept best first, so a write moves a movie between its boards in
+ * logarithmic time and a lookup reads the head of a single board instead of scanning or sorting the catalogue.
+ * Genres are matched case-insensitively; a movie without a value is not ranked by it.
+ */
+@Component
+public class LeaderboardIndex implements MovieIndex {
+
+    public enum By {
+        RATING, REVENUE, VOTES
+    }
+
+    private static final Comparator<Entry> BEST_FIRST = Comparator.comparingDouble((Entry entry) -> entry.value).reversed()
+            .thenComparingLong(entry -> entry.id);
+
+    private final Map<By, Map<String, ConcurrentSkipListSet<Entry>>> boards = new EnumMap<>(By.class);
+    private final Map<Long, Ranked> movies = new ConcurrentHashMap<>();
+
+    public LeaderboardIndex() {
+        for (By by : By.values()) {
+            boards.put(by, new ConcurrentHashMap<>());
+        }
+    }
+
+    private static class Entry {
+        final long id;
+        final String title;
+        final Integer releaseYear;
+        final double value;
+
+        Entry(Ranked ranked, double value) {
+            id = ranked.id;
+            title = ranked.title;
+            releaseYear = ranked.releaseYear;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The boards a movie is on and its entry per dimension, so that it can be taken off them again.
+     */
+    private static class Ranked {
+        final long id;
+        final String title;
+        final Integer releaseYear;
+        final Set<String> scopes;
+        final Map<By, Entry> entries = new EnumMap<>(By.class);
+
+        Ranked(Movie movie) {
+            id = movie.getId();
+            title = movie.getTitle();
+            releaseYear = movie.getReleaseYear();
+            scopes = new LinkedHashSet<>();
+            List<String> genres = new ArrayList<>();
+            genres.add(null);
+            if (movie.getGenres() != null) {
+                for (Genre genre : movie.getGenres()) genres.add(genre.getCode());
+            }
+            for (String genre : genres) {
+                scopes.add(scope(genre, null));
+                if (movie.getReleaseYear() != null) scopes.add(scope(genre, movie.getReleaseYear()));
+            }
+            if (movie.getRating() != null) entries.put(By.RATING, new Entry(this, movie.getRating()));
+            if (movie.getRevenue() != null) entries.put(By.REVENUE, new Entry(this, movie.getRevenue()));
+            if (movie.getVotes() != null) entries.put(By.VOTES, new Entry(this, movie.getVotes()));
+        }
+
+        /**
+         * The same movie on the same boards, with a new rating and vote count.
+         */
+        Ranked(Ranked ranked, double rating, int votes) {
+            id = ranked.id;
+            title = ranked.title;
+            releaseYear = ranked.releaseYear;
+            scopes = ranked.scopes;
+            Entry revenue = ranked.entries.get(By.REVENUE);
+            if (revenue != null) entries.put(By.REVENUE, revenue);
+            entries.put(By.RATING, new Entry(this, rating));
+            entries.put(By.VOTES, new Entry(this, votes));
+        }
+    }
+
+    private static String scope(String genre, Integer year) {
+        return (genre == null ? "" : genre.toLowerCase(Locale.ROOT)) + '|' + (year == null ? "" : year);
+    }
+
+    @Override
+    public void put(Movie movie) {
+        Ranked ranked = new Ranked(movie);
+        // writes of the same movie are serialised, so its old entries are always taken off before the new ones go on
+        movies.compute(movie.getId(), (id, old) -> {
+            if (old != null) unrank(old);
+            rank(ranked);
+            return ranked;
+        });
+    }
+
+    @Override
+    public void votesChanged(Long id, double rating, int votes) {
+        movies.computeIfPresent(id, (key, old) -> {
+            Ranked ranked = new Ranked(old, rating, votes);
+            unrank(old);
+            rank(ranked);
+            return ranked;
+        });
+    }
+
+    @Override
+    public void remove(Long id) {
+        movies.computeIfPresent(id, (key, old) -> {
+            unrank(old);
+            return null;
+        });
+    }
+
+    @Override
+    public void clear() {
+        movies.clear();
+        for (Map<String, ConcurrentSkipListSet<Entry>> byScope : boards.values()) {
+            byScope.clear();
+        }
+    }
+
+    private void rank(Ranked ranked) {
+        for (Map.Entry<By, Entry> entry : ranked.entries.entrySet()) {
+            Map<String, ConcurrentSkipListSet<Entry>> byScope = boards.get(entry.getKey());
+            for (String scope : ranked.scopes) {
+                byScope.computeIfAbsent(scope, key -> new ConcurrentSkipListSet<>(BEST_FIRST)).add(entry.getValue());
+            }
+        }
+    }
+
+    private void unrank(Ranked ranked) {
+        for (Map.Entry<By, Entry> entry : ranked.entries.entrySet()) {
+            Map<String, ConcurrentSkipListSet<Entry>> byScope = boards.get(entry.getKey());
+            for (String scope : ranked.scopes) {
+                ConcurrentSkipListSet<Entry> board = byScope.get(scope);
+                if (board != null) board.remove(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param by    The value to rank by
+     * @param genre A genre the movies must have, or null
+     * @param year  The release year of the movies, or null
+     * @param limit The maximum number of movies to return
+     * @return The movies with the highest value, best first
+     */
+    public List<TopMovie> top(By by, String genre, Integer year, int limit) {
+        ConcurrentSkipListSet<Entry> board = boards.get(by).get(scope(genre, year));
+        if (board == null) return Collections.emptyList();
+        List<TopMovie> top = new ArrayList<>(Math.min(limit, 64));
+        // a movie being moved can briefly be seen at both its old and its new place
+        Set<Long> seen = new HashSet<>();
+        for (Entry entry : board) {
+            if (top.size() == limit) break;
+            if (seen.add(entry.id)) top.add(new TopMovie(entry.id, entry.title, entry.releaseYear, entry.value));
+        }
+        return top;
+    }
+}
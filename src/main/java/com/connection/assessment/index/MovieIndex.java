@@ -0,0 +1,51 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.entity.Movie;
+
+import java.util.Collection;
+
+/**
+ * An in-memory, read-optimised view of the movie table that is kept in sync by {@link MovieIndexer}.
+ * Implementations copy what they need out of the movie; they never hold on to entities.
+ */
+public interface MovieIndex {
+
+    /**
+     * Adds a movie, or replaces it if it is already indexed.
+     *
+     * @param movie A saved movie with its genres, actors and director
+     */
+    void put(Movie movie);
+
+    /**
+     * Adds or replaces many movies, for example a committed import chunk.
+     *
+     * @param movies Saved movies with their genres, actors and director
+     */
+    default void putAll(Collection<Movie> movies) {
+        for (Movie movie : movies) {
+            put(movie);
+        }
+    }
+
+    /**
+     * Takes the average rating and vote count of an indexed movie whose other fields did not change, such as after a
+     * flush of pending votes. Indexes that neither rank nor filter by them keep what the last put gave them.
+     *
+     * @param id     The id of an indexed movie
+     * @param rating Its average rating
+     * @param votes  Its number of votes
+     */
+    default void votesChanged(Long id, double rating, int votes) {
+    }
+
+    /**
+     * @param id The id of a deleted movie
+     */
+    void remove(Long id);
+
+    /**
+     * Drops every movie, ahead of a rebuild.
+     */
+    void clear();
+}
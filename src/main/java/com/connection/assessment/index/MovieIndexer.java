@@ -0,0 +1,231 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.repository.MovieBulkRepository;
+import com.connection.assessment.repository.MovieRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Fans committed movie writes out to every {@link MovieIndex}, and counts them to version the catalogue as a whole.
+ * <p>
+ * Writes are handed over after their transaction committed, so two writes of the same movie can arrive in the
+ * opposite order. Every write carries the version the movie was committed with, and the indexer remembers the last
+ * version it passed on per movie: an older put or vote change is dropped, and a delete leaves a tombstone with its
+ * version so that a put arriving after it cannot bring the movie back. The check and the fan-out of a movie happen
+ * under the lock of its stripe, so they are never interleaved with another write of the same movie.
+ */
+@Component
+public class MovieIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MovieIndexer.class);
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    List<MovieIndex> indexes;
+    @Autowired
+    MovieRepository movieRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    // tells the counts of this instance apart from those of an earlier run
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong changes = new AtomicLong();
+
+    // last version passed on per movie id; a deleted movie is kept as a tombstone, encoded as -(version + 1)
+    private final ConcurrentHashMap<Long, Long> versions = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public MovieIndexer() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @return A value that changes after every committed write to any movie
+     */
+    public String getCatalogueVersion() {
+        return epoch + "-" + changes.get();
+    }
+
+    /**
+     * Clears every index and fills it again from the movie table, a page at a time, for movies that are already
+     * stored rather than written by this instance.
+     */
+    public void rebuild() {
+        lockAll();
+        try {
+            for (MovieIndex index : indexes) {
+                index.clear();
+            }
+            versions.clear();
+        } finally {
+            unlockAll();
+        }
+        changes.incrementAndGet();
+        long after = 0;
+        int count = 0;
+        while (true) {
+            long from = after;
+            List<Movie> page = load(() -> movieRepository.findPageWithDirector(from, PageRequest.of(0, REBUILD_PAGE_SIZE)));
+            if (page.isEmpty()) break;
+            indexed(page);
+            count += page.size();
+            after = page.get(page.size() - 1).getId();
+        }
+        logger.info("Rebuilt movie indexes from {} stored movies", count);
+    }
+
+    /**
+     * @param movie A committed movie with its version, genres, actors and director
+     */
+    public void indexed(Movie movie) {
+        ReentrantLock lock = lockOf(movie.getId());
+        lock.lock();
+        try {
+            if (!advance(movie.getId(), movie.getVersion())) return;
+            for (MovieIndex index : indexes) {
+                index.put(movie);
+            }
+        } finally {
+            lock.unlock();
+        }
+        changes.incrementAndGet();
+    }
+
+    /**
+     * @param movies Committed movies with their versions, genres, actors and director
+     */
+    public void indexed(Collection<Movie> movies) {
+        lockAll();
+        try {
+            List<Movie> newer = new ArrayList<>(movies.size());
+            for (Movie movie : movies) {
+                if (advance(movie.getId(), movie.getVersion())) newer.add(movie);
+            }
+            if (newer.isEmpty()) return;
+            for (MovieIndex index : indexes) {
+                index.putAll(newer);
+            }
+        } finally {
+            unlockAll();
+        }
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Passes new vote counts and average ratings on to the indexes, without reloading the movies. A change is only
+     * applied on top of the version right before it; if a write in between has not been passed on yet, or the movie
+     * was not indexed yet, the movie is read again instead, so that the indexes never combine the votes with older
+     * fields.
+     *
+     * @param movies Rating, votes and version of movies as stored
+     */
+    public void votesChanged(Collection<MovieBulkRepository.StoredVotes> movies) {
+        if (movies.isEmpty()) return;
+        List<Long> reload = new ArrayList<>();
+        lockAll();
+        try {
+            for (MovieBulkRepository.StoredVotes movie : movies) {
+                Long stored = versions.get(movie.getId());
+                if (stored == null || stored >= 0 && stored < movie.getVersion() - 1) {
+                    reload.add(movie.getId());
+                } else if (stored >= 0 && stored < movie.getVersion()) {
+                    versions.put(movie.getId(), movie.getVersion());
+                    for (MovieIndex index : indexes) {
+                        index.votesChanged(movie.getId(), movie.getRating(), movie.getVotes());
+                    }
+                }
+            }
+        } finally {
+            unlockAll();
+        }
+        changes.incrementAndGet();
+        if (!reload.isEmpty()) {
+            indexed(load(() -> movieRepository.findByIdsWithDirector(reload)));
+        }
+    }
+
+    /**
+     * @param id      The id of a deleted movie
+     * @param version The version it was deleted with
+     */
+    public void removed(Long id, Long version) {
+        ReentrantLock lock = lockOf(id);
+        lock.lock();
+        try {
+            Long stored = versions.get(id);
+            if (stored != null && stored < 0) return;
+            versions.put(id, -(version == null ? 0 : version) - 1);
+            for (MovieIndex index : indexes) {
+                index.remove(id);
+            }
+        } finally {
+            lock.unlock();
+        }
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Records the version of a movie about to be passed on, under the lock of its stripe.
+     *
+     * @return false if the indexes already hold this or a later version, or the movie was deleted
+     */
+    private boolean advance(Long id, Long version) {
+        if (version == null) return true;
+        Long stored = versions.get(id);
+        if (stored != null && (stored < 0 || stored >= version)) return false;
+        versions.put(id, version);
+        return true;
+    }
+
+    private List<Movie> load(Supplier<List<Movie>> query) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        List<Movie> movies = readOnly.execute(status -> {
+            List<Movie> found = query.get();
+            if (!found.isEmpty()) {
+                List<Long> ids = found.stream().map(Movie::getId).collect(Collectors.toList());
+                movieRepository.fetchGenres(ids);
+                movieRepository.fetchActors(ids);
+            }
+            return found;
+        });
+        return movies == null ? Collections.emptyList() : movies;
+    }
+
+    private ReentrantLock lockOf(Long id) {
+        return locks[(Long.hashCode(id) & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    // always in the same order, so two writers of many movies cannot deadlock
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+}
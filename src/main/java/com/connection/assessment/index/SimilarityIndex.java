@@ -0,0 +1,406 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.dto.SimilarMovie;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Precomputed nearest neighbours per movie. The actors and the director of a movie form a feature set, whose
+ * MinHash signature is split into bands; movies sharing a band bucket (locality sensitive hashing) are the only
+ * candidates scored against each other, so no write or read scans all movies. Genres only count in the score: with
+ * a few dozen codes shared by thousands of movies they would put most of the catalogue into the same buckets. A
+ * bucket takes at most {@value #MAX_BUCKET_SIZE} movies. The {@value #MAX_K} best candidates of every movie are kept
+ * in a table: written movies get a fresh entry, their candidates have the written movie merged into theirs, and
+ * entries that held a changed or deleted movie are dropped under the write lock and recomputed under the read lock,
+ * so lookups are not blocked while that runs. Every movie keeps the ids of the entries that list it, since an entry
+ * can list a movie it no longer shares a bucket with. A changed rating is merged into those entries, or drops them
+ * when the lower score could let another candidate in. A lookup copies a prefix of the entry.
+ */
+@Component
+public class SimilarityIndex implements MovieIndex {
+
+    public static final int MAX_K = 50;
+
+    private static final int HASHES = 32;
+    private static final int ROWS_PER_BAND = 2;
+    private static final int MAX_BUCKET_SIZE = 500;
+
+    private static final double GENRE_WEIGHT = 0.35;
+    private static final double ACTOR_WEIGHT = 0.35;
+    private static final double DIRECTOR_WEIGHT = 0.15;
+    private static final double NUMERIC_WEIGHT = 0.05;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Features> features = new HashMap<>();
+    private final Map<Long, Set<Long>> buckets = new HashMap<>();
+    // entries are added under the read lock by lookups and only removed under the write lock
+    private final Map<Long, List<Neighbour>> neighbours = new ConcurrentHashMap<>();
+    // movie id to the ids of the entries listing it, linked together with the entry
+    private final Map<Long, Set<Long>> listedBy = new ConcurrentHashMap<>();
+
+    private static class Features {
+        final long id;
+        final String title;
+        final Set<String> genres = new HashSet<>();
+        final Set<Long> actors = new HashSet<>();
+        final Long director;
+        final Double rating;
+        final Integer year;
+        final Integer runtime;
+        final long[] bands;
+
+        Features(Movie movie) {
+            id = movie.getId();
+            title = movie.getTitle();
+            if (movie.getGenres() != null) {
+                for (Genre genre : movie.getGenres()) genres.add(genre.getCode().toLowerCase(Locale.ROOT));
+            }
+            if (movie.getActors() != null) {
+                for (Actor actor : movie.getActors()) actors.add(actor.getId());
+            }
+            director = movie.getDirector() == null ? null : movie.getDirector().getId();
+            rating = movie.getRating();
+            year = movie.getReleaseYear();
+            runtime = movie.getRuntime();
+            bands = bands();
+        }
+
+        Features(Features movie, Double rating) {
+            id = movie.id;
+            title = movie.title;
+            genres.addAll(movie.genres);
+            actors.addAll(movie.actors);
+            director = movie.director;
+            this.rating = rating;
+            year = movie.year;
+            runtime = movie.runtime;
+            // the rating is not hashed, so the buckets stay the same
+            bands = movie.bands;
+        }
+
+        private long[] bands() {
+            List<Long> tokens = new ArrayList<>();
+            for (Long actor : actors) tokens.add(actor * 2);
+            if (director != null) tokens.add(director * 2 + 1);
+            if (tokens.isEmpty()) return new long[0];
+
+            long[] signature = new long[HASHES];
+            for (int h = 0; h < HASHES; h++) {
+                long min = Long.MAX_VALUE;
+                for (long token : tokens) {
+                    min = Math.min(min, mix(token ^ (h + 1) * 0x9E3779B97F4A7C15L));
+                }
+                signature[h] = min;
+            }
+            long[] keys = new long[HASHES / ROWS_PER_BAND];
+            for (int band = 0; band < keys.length; band++) {
+                long key = band;
+                for (int row = 0; row < ROWS_PER_BAND; row++) {
+                    key = key * 31 + signature[band * ROWS_PER_BAND + row];
+                }
+                keys[band] = mix(key);
+            }
+            return keys;
+        }
+    }
+
+    private static class Neighbour {
+        final long id;
+        final double score;
+
+        Neighbour(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    @Override
+    public void put(Movie movie) {
+        putAll(Collections.singletonList(movie));
+    }
+
+    @Override
+    public void putAll(Collection<Movie> movies) {
+        Set<Long> stale = new LinkedHashSet<>();
+        lock.writeLock().lock();
+        try {
+            List<Features> added = new ArrayList<>(movies.size());
+            for (Movie movie : movies) {
+                unindex(movie.getId(), stale);
+                Features movieFeatures = new Features(movie);
+                features.put(movieFeatures.id, movieFeatures);
+                for (long band : movieFeatures.bands) {
+                    Set<Long> bucket = buckets.computeIfAbsent(band, key -> new HashSet<>());
+                    if (bucket.size() < MAX_BUCKET_SIZE) bucket.add(movieFeatures.id);
+                }
+                added.add(movieFeatures);
+            }
+            for (Features movieFeatures : added) {
+                stale.add(movieFeatures.id);
+                for (Long candidate : candidates(movieFeatures)) {
+                    List<Neighbour> entry = neighbours.get(candidate);
+                    if (entry != null) replace(candidate, entry, merge(entry, movieFeatures.id, score(features.get(candidate), movieFeatures)));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // stale ids have no entry now, so a lookup racing with this computes its own; the read lock keeps the maps
+        // still while the entries are computed in parallel, and a write in between is seen by both
+        lock.readLock().lock();
+        try {
+            stale.parallelStream().forEach(id -> {
+                Features movie = features.get(id);
+                if (movie != null) neighbours.computeIfAbsent(id, key -> computeAndLink(movie));
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the rating of a movie. Entries that list it get its new score merged in, unless the score dropped and
+     * the entry is full: a candidate outside the entry might now beat it, so the entry is dropped and recomputed on
+     * its next lookup, like the entry of the movie itself.
+     */
+    @Override
+    public void votesChanged(Long id, double rating, int votes) {
+        lock.writeLock().lock();
+        try {
+            Features old = features.get(id);
+            if (old == null || old.rating != null && old.rating == rating) return;
+            Features changed = new Features(old, rating);
+            features.put(id, changed);
+            drop(id);
+            Set<Long> owners = listedBy.get(id);
+            if (owners == null) return;
+            for (Long owner : new ArrayList<>(owners)) {
+                List<Neighbour> entry = neighbours.get(owner);
+                if (entry == null) continue;
+                double score = score(features.get(owner), changed);
+                if (entry.size() == MAX_K && entry.stream().anyMatch(neighbour -> neighbour.id == id && score < neighbour.score)) {
+                    drop(owner);
+                } else {
+                    replace(owner, entry, merge(entry, id, score));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id, new HashSet<>());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            features.clear();
+            buckets.clear();
+            neighbours.clear();
+            listedBy.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops a movie and the entries of the movies that list it, which are added to {@code stale}.
+     */
+    private void unindex(Long id, Set<Long> stale) {
+        Features old = features.get(id);
+        if (old == null) return;
+        Set<Long> owners = listedBy.get(id);
+        if (owners != null) {
+            for (Long owner : new ArrayList<>(owners)) {
+                if (drop(owner)) stale.add(owner);
+            }
+        }
+        for (long band : old.bands) {
+            Set<Long> bucket = buckets.get(band);
+            if (bucket == null) continue;
+            bucket.remove(id);
+            if (bucket.isEmpty()) buckets.remove(band);
+        }
+        features.remove(id);
+        drop(id);
+        stale.remove(id);
+    }
+
+    /**
+     * Removes the entry of a movie and its links, under the write lock.
+     *
+     * @return true if the movie had an entry
+     */
+    private boolean drop(Long owner) {
+        List<Neighbour> entry = neighbours.remove(owner);
+        if (entry == null) return false;
+        unlink(owner, entry);
+        return true;
+    }
+
+    /**
+     * Swaps the entry of a movie for another, under the write lock.
+     */
+    private void replace(Long owner, List<Neighbour> entry, List<Neighbour> replacement) {
+        if (replacement == entry) return;
+        neighbours.put(owner, replacement);
+        unlink(owner, entry);
+        link(owner, replacement);
+    }
+
+    private void link(Long owner, List<Neighbour> entry) {
+        for (Neighbour neighbour : entry) {
+            listedBy.computeIfAbsent(neighbour.id, key -> ConcurrentHashMap.newKeySet()).add(owner);
+        }
+    }
+
+    // only under the write lock, so no lookup links an entry to a set while it is removed
+    private void unlink(Long owner, List<Neighbour> entry) {
+        for (Neighbour neighbour : entry) {
+            Set<Long> owners = listedBy.get(neighbour.id);
+            if (owners == null) continue;
+            owners.remove(owner);
+            if (owners.isEmpty()) listedBy.remove(neighbour.id);
+        }
+    }
+
+    /**
+     * @param id A movie id
+     * @param k  The number of similar movies to return, at most {@value #MAX_K}
+     * @return The most similar movies, most similar first, or null if the movie is not indexed
+     */
+    public List<SimilarMovie> similar(Long id, int k) {
+        lock.readLock().lock();
+        try {
+            Features movie = features.get(id);
+            if (movie == null) return null;
+            List<Neighbour> entry = neighbours.computeIfAbsent(id, key -> computeAndLink(movie));
+            List<SimilarMovie> similar = new ArrayList<>(Math.min(k, entry.size()));
+            for (Neighbour neighbour : entry) {
+                if (similar.size() == k) break;
+                Features listed = features.get(neighbour.id);
+                // removal drops every entry that lists a movie, so this only guards against a missed link
+                if (listed != null) similar.add(new SimilarMovie(neighbour.id, listed.title, neighbour.score));
+            }
+            return similar;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Set<Long> candidates(Features movie) {
+        Set<Long> candidates = new HashSet<>();
+        for (long band : movie.bands) {
+            Set<Long> bucket = buckets.get(band);
+            if (bucket != null) candidates.addAll(bucket);
+        }
+        candidates.remove(movie.id);
+        return candidates;
+    }
+
+    /**
+     * Computes the entry of a movie that has none, inside {@code computeIfAbsent}, and links it.
+     */
+    private List<Neighbour> computeAndLink(Features movie) {
+        List<Neighbour> entry = compute(movie);
+        link(movie.id, entry);
+        return entry;
+    }
+
+    private List<Neighbour> compute(Features movie) {
+        // keep the best candidates in a min-heap of size MAX_K
+        PriorityQueue<Neighbour> top = new PriorityQueue<>(MAX_K + 1, (a, b) -> Double.compare(a.score, b.score));
+        for (Long candidate : candidates(movie)) {
+            top.offer(new Neighbour(candidate, score(movie, features.get(candidate))));
+            if (top.size() > MAX_K) {
+                top.poll();
+            }
+        }
+        List<Neighbour> entry = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            entry.add(top.poll());
+        }
+        Collections.reverse(entry);
+        return Collections.unmodifiableList(entry);
+    }
+
+    private static List<Neighbour> merge(List<Neighbour> entry, long id, double score) {
+        if (entry.size() == MAX_K && score <= entry.get(MAX_K - 1).score && entry.stream().noneMatch(neighbour -> neighbour.id == id)) {
+            return entry;
+        }
+        List<Neighbour> merged = new ArrayList<>(entry.size() + 1);
+        boolean inserted = false;
+        for (Neighbour neighbour : entry) {
+            if (neighbour.id == id) continue;
+            if (!inserted && score > neighbour.score) {
+                merged.add(new Neighbour(id, score));
+                inserted = true;
+            }
+            merged.add(neighbour);
+        }
+        if (!inserted) merged.add(new Neighbour(id, score));
+        return Collections.unmodifiableList(merged.size() > MAX_K ? merged.subList(0, MAX_K) : merged);
+    }
+
+    /**
+     * Weighted sum of the Jaccard similarities of genres and actors, a shared director, and the closeness of
+     * rating, release year and runtime; between 0 and 1.
+     */
+    static double score(Features a, Features b) {
+        double score = GENRE_WEIGHT * jaccard(a.genres, b.genres) + ACTOR_WEIGHT * jaccard(a.actors, b.actors);
+        if (a.director != null && a.director.equals(b.director)) score += DIRECTOR_WEIGHT;
+        if (a.rating != null && b.rating != null) score += NUMERIC_WEIGHT * closeness(a.rating, b.rating, 10);
+        if (a.year != null && b.year != null) score += NUMERIC_WEIGHT * closeness(a.year, b.year, 20);
+        if (a.runtime != null && b.runtime != null) score += NUMERIC_WEIGHT * closeness(a.runtime, b.runtime, 60);
+        return score;
+    }
+
+    private static <T> double jaccard(Set<T> a, Set<T> b) {
+        if (a.isEmpty() && b.isEmpty()) return 0;
+        int shared = 0;
+        for (T value : a) {
+            if (b.contains(value)) shared++;
+        }
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+
+    private static double closeness(double a, double b, double range) {
+        return 1 - Math.min(Math.abs(a - b), range) / range;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
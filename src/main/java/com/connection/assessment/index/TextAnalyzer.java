@@ -0,0 +1,89 @@
+package com.connection.assessment.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits text into lower-cased, stemmed terms. The same analysis is applied to indexed text and to queries, so the
+ * stemmer only has to be consistent, not linguistically exact.
+ */
+final class TextAnalyzer {
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "he", "her", "his", "in", "into",
+            "is", "it", "its", "of", "on", "or", "she", "that", "the", "their", "they", "this", "to", "was", "who",
+            "with"));
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * @param text Any text, may be null
+     * @return The terms of the text in order, including repetitions
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letterOrDigit = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letterOrDigit && start < 0) {
+                start = i;
+            } else if (!letterOrDigit && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!STOP_WORDS.contains(token)) {
+                    terms.add(stem(token));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Strips common English inflections: plurals, -ed, -ing and -ly.
+     */
+    static String stem(String word) {
+        if (word.length() <= 3) return word;
+
+        String stem = word;
+        if (stem.endsWith("ies") && stem.length() > 4) {
+            stem = stem.substring(0, stem.length() - 3) + "y";
+        } else if (stem.endsWith("sses")) {
+            stem = stem.substring(0, stem.length() - 2);
+        } else if (stem.endsWith("s") && !stem.endsWith("ss") && !stem.endsWith("us") && !stem.endsWith("is")) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+
+        if (stem.endsWith("eed")) {
+            return stem;
+        } else if (stem.endsWith("ed") && stem.length() > 4 && hasVowel(stem, stem.length() - 2)) {
+            stem = undouble(stem.substring(0, stem.length() - 2));
+        } else if (stem.endsWith("ing") && stem.length() > 5 && hasVowel(stem, stem.length() - 3)) {
+            stem = undouble(stem.substring(0, stem.length() - 3));
+        } else if (stem.endsWith("ly") && stem.length() > 4) {
+            stem = stem.substring(0, stem.length() - 2);
+        }
+        return stem;
+    }
+
+    private static boolean hasVowel(String word, int end) {
+        for (int i = 0; i < end; i++) {
+            if ("aeiouy".indexOf(word.charAt(i)) >= 0) return true;
+        }
+        return false;
+    }
+
+    private static String undouble(String stem) {
+        int length = stem.length();
+        if (length > 2 && stem.charAt(length - 1) == stem.charAt(length - 2) && "aeioulsz".indexOf(stem.charAt(length - 1)) < 0) {
+            return stem.substring(0, length - 1);
+        }
+        return stem;
+    }
+}
@@ -0,0 +1,155 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.dto.SearchHit;
+import com.connection.assessment.model.entity.Movie;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over movie titles and descriptions, ranked with BM25. Title terms are counted twice so a match in
+ * the title outweighs the same match in the description.
+ */
+@Component
+public class TextIndex implements MovieIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int TITLE_BOOST = 2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    private static class Document {
+        final String title;
+        final int length;
+        final Set<String> terms;
+
+        Document(String title, int length, Set<String> terms) {
+            this.title = title;
+            this.length = length;
+            this.terms = terms;
+        }
+    }
+
+    @Override
+    public void put(Movie movie) {
+        List<String> terms = new ArrayList<>();
+        List<String> titleTerms = TextAnalyzer.terms(movie.getTitle());
+        for (int i = 0; i < TITLE_BOOST; i++) {
+            terms.addAll(titleTerms);
+        }
+        terms.addAll(TextAnalyzer.terms(movie.getDescription()));
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+
+        lock.writeLock().lock();
+        try {
+            unindex(movie.getId());
+            for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                postings.computeIfAbsent(frequency.getKey(), term -> new HashMap<>()).put(movie.getId(), frequency.getValue());
+            }
+            documents.put(movie.getId(), new Document(movie.getTitle(), terms.size(), frequencies.keySet()));
+            totalLength += terms.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) return;
+        for (String term : document.terms) {
+            Map<Long, Integer> movies = postings.get(term);
+            movies.remove(id);
+            if (movies.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= document.length;
+    }
+
+    /**
+     * @param query Free text
+     * @param limit The maximum number of hits
+     * @return The best matching movies, best first
+     */
+    public List<SearchHit> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.terms(query));
+
+        lock.readLock().lock();
+        try {
+            int count = documents.size();
+            if (count == 0 || terms.isEmpty()) return Collections.emptyList();
+            double averageLength = (double) totalLength / count;
+
+            Map<Long, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                Map<Long, Integer> movies = postings.get(term);
+                if (movies == null) continue;
+                double idf = Math.log(1 + (count - movies.size() + 0.5) / (movies.size() + 0.5));
+                for (Map.Entry<Long, Integer> posting : movies.entrySet()) {
+                    int frequency = posting.getValue();
+                    int length = documents.get(posting.getKey()).length;
+                    double score = idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+                    scores.merge(posting.getKey(), score, Double::sum);
+                }
+            }
+
+            // keep the best hits in a min-heap of size limit
+            PriorityQueue<Map.Entry<Long, Double>> top = new PriorityQueue<>(limit + 1, Map.Entry.<Long, Double>comparingByValue());
+            for (Map.Entry<Long, Double> score : scores.entrySet()) {
+                top.offer(score);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<SearchHit> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Map.Entry<Long, Double> score = top.poll();
+                hits.add(new SearchHit(score.getKey(), documents.get(score.getKey()).title, score.getValue()));
+            }
+            Collections.reverse(hits);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
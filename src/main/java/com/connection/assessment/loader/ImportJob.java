@@ -0,0 +1,49 @@
+package com.connection.assessment.loader;
+
+/**
+ * A movie import running in the background, identified by {@code id} so that its progress can be polled.
+ */
+public class ImportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final ImportProgress progress = new ImportProgress();
+    private volatile Status status = Status.QUEUED;
+    private volatile String error;
+
+    ImportJob(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public ImportProgress getProgress() {
+        return progress;
+    }
+
+    void running() {
+        status = Status.RUNNING;
+    }
+
+    void completed() {
+        status = Status.COMPLETED;
+    }
+
+    void failed(Throwable e) {
+        error = e.getMessage();
+        status = Status.FAILED;
+    }
+}
@@ -0,0 +1,159 @@
+package com.connection.assessment.loader;
+
+import com.connection.assessment.index.MovieIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the startup import and csv uploads through the {@link MovieDataLoader} in the background. Imports run one
+ * at a time so that two imports never race to create the same genre, actor or director.
+ */
+@Service
+public class ImportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportJobService.class);
+
+    private static final int RETAINED_JOBS = 100;
+
+    public static final String STARTUP_JOB_ID = "startup";
+
+    @Autowired
+    MovieDataLoader movieDataLoader;
+    @Autowired
+    MovieIndexer movieIndexer;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, ImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<String, ImportJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImportJob> eldest) {
+            return size() > RETAINED_JOBS;
+        }
+    });
+
+    private volatile ImportJob startupJob;
+
+    /**
+     * Queues the import of the movies the application starts with, after the indexes were rebuilt from the movies a
+     * persistent database already holds. Its job has the id {@value #STARTUP_JOB_ID} and is never evicted.
+     *
+     * @param csv A csv resource
+     * @return The queued import job
+     */
+    public ImportJob submitStartup(Resource csv) {
+        ImportJob job = new ImportJob(STARTUP_JOB_ID);
+        startupJob = job;
+        executor.execute(() -> {
+            job.running();
+            try {
+                movieIndexer.rebuild();
+                movieDataLoader.load(csv, job.getProgress());
+                job.completed();
+            } catch (Exception e) {
+                logger.error("Startup import of " + csv.getDescription() + " failed", e);
+                job.failed(e);
+            } catch (Error e) {
+                // the job must not stay RUNNING, or readiness waits forever
+                logger.error("Startup import of " + csv.getDescription() + " failed", e);
+                job.failed(e);
+                throw e;
+            }
+        });
+        logger.info("Queued startup import of {}", csv.getDescription());
+        return job;
+    }
+
+    /**
+     * @return The startup import job, or null before it was submitted
+     */
+    public ImportJob getStartupJob() {
+        return startupJob;
+    }
+
+    /**
+     * Takes over the file the container spooled an upload to and queues its import. The spooled file is moved, not
+     * copied, so an upload is written to disk once.
+     *
+     * @param file A csv upload
+     * @return The queued import job
+     * @throws IOException if the upload cannot be moved
+     */
+    public ImportJob submit(MultipartFile file) throws IOException {
+        Path csv = Files.createTempFile("movie-import", ".csv");
+        try {
+            // renames the container's spool file when it is on the same file system, copies it otherwise
+            file.transferTo(csv.toFile());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(csv);
+            throw e;
+        }
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job, csv));
+        logger.info("Queued import {} of {}", job.getId(), file.getOriginalFilename());
+        return job;
+    }
+
+    private void run(ImportJob job, Path csv) {
+        job.running();
+        try (Reader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            movieDataLoader.load(in, job.getProgress());
+            job.completed();
+        } catch (Exception e) {
+            logger.error("Import " + job.getId() + " failed", e);
+            job.failed(e);
+        } catch (Error e) {
+            logger.error("Import " + job.getId() + " failed", e);
+            job.failed(e);
+            throw e;
+        } finally {
+            try {
+                Files.deleteIfExists(csv);
+            } catch (IOException e) {
+                logger.warn("Could not delete {}", csv);
+            }
+        }
+    }
+
+    /**
+     * Gets an import job by id
+     *
+     * @param id A job id
+     * @return The import job
+     * @throws ResponseStatusException if there is no job for the id
+     */
+    public ImportJob getJob(String id) {
+        ImportJob job = STARTUP_JOB_ID.equals(id) ? startupJob : jobs.get(id);
+        if (job == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found for id: " + id);
+        return job;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,78 @@
+package com.connection.assessment.loader;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a running or finished movie import. Safe to read from another thread while the import runs.
+ */
+public class ImportProgress {
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong rowsUnchanged = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    void rowRejected() {
+        rowsRejected.incrementAndGet();
+    }
+
+    void rowsWritten(int count) {
+        rowsWritten.addAndGet(count);
+    }
+
+    void rowsUnchanged(int count) {
+        rowsUnchanged.addAndGet(count);
+    }
+
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected.get();
+    }
+
+    /**
+     * @return rows skipped by a delta import because the stored movie has the same content
+     */
+    public long getRowsUnchanged() {
+        return rowsUnchanged.get();
+    }
+
+    /**
+     * @return milliseconds since the import started, or its total duration once it has finished
+     */
+    public long getElapsedMillis() {
+        if (startNanos == 0) return 0;
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    /**
+     * @return rows written per second
+     */
+    public double getRowsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getRowsWritten() * 1000.0 / elapsed;
+    }
+}
@@ -0,0 +1,36 @@
+package com.connection.assessment.loader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports DOWN until the startup import has completed, with its progress as details. Part of the readiness group,
+ * so traffic is only routed to an instance once its movies are loaded, while liveness is UP from the start.
+ */
+@Component
+public class MovieDataHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    ImportJobService importJobService;
+
+    @Override
+    public Health health() {
+        ImportJob job = importJobService.getStartupJob();
+        if (job == null) {
+            return Health.down().withDetail("status", "NOT_STARTED").build();
+        }
+        ImportProgress progress = job.getProgress();
+        Health.Builder health = job.getStatus() == ImportJob.Status.COMPLETED ? Health.up() : Health.down();
+        health.withDetail("status", job.getStatus())
+                .withDetail("rowsRead", progress.getRowsRead())
+                .withDetail("rowsWritten", progress.getRowsWritten())
+                .withDetail("rowsRejected", progress.getRowsRejected())
+                .withDetail("elapsedMillis", progress.getElapsedMillis());
+        if (job.getError() != null) {
+            health.withDetail("error", job.getError());
+        }
+        return health.build();
+    }
+}
@@ -0,0 +1,387 @@
+package com.connection.assessment.loader;
+
+import com.connection.assessment.index.MovieIndexer;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.repository.MovieBulkRepository;
+import com.connection.assessment.service.MovieCache;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Bulk import of movies. Genres, actors and directors are de-duplicated in in-memory dictionaries, whose misses
+ * are looked up in the database once per chunk, and movies are written together with their join rows as JDBC
+ * batches, one transaction per chunk. With {@code movie.import.delta} a movie whose title and release year are
+ * already stored is only rewritten when the content hash of its row changed, and skipped otherwise; a second row with
+ * the same title and release year in one import is rejected, as it would overwrite the first on every re-import.
+ */
+@Component
+public class MovieDataLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MovieDataLoader.class);
+
+    @Autowired
+    MovieBulkRepository movieBulkRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MovieIndexer movieIndexer;
+    @Autowired
+    MovieCache movieCache;
+
+    @Value("${movie.import.batch-size:500}")
+    int batchSize;
+    @Value("${movie.import.id-block-size:1000}")
+    int idBlockSize;
+    @Value("${movie.import.delta:false}")
+    boolean delta;
+    @Value("${movie.import.snapshot.enabled:false}")
+    boolean snapshotEnabled;
+    @Value("${movie.import.snapshot.path:movies.snapshot}")
+    Path snapshotPath;
+
+    /**
+     * Imports the movies of a csv resource. With {@code movie.import.snapshot.enabled} the movies are taken from
+     * the {@link MovieSnapshot} at {@code movie.import.snapshot.path} when it was written from the same csv, and
+     * otherwise parsed from the csv while a new snapshot is written.
+     *
+     * @param csv      A csv resource in the layout of {@link MovieCsv}
+     * @param progress Counters updated while the import runs
+     * @return The {@code progress} passed in
+     * @throws IOException if the csv or the snapshot cannot be read or written
+     */
+    public ImportProgress load(Resource csv, ImportProgress progress) throws IOException {
+        if (!snapshotEnabled) {
+            try (Reader in = new InputStreamReader(csv.getInputStream(), StandardCharsets.UTF_8)) {
+                return load(in, progress, delta);
+            }
+        }
+
+        byte[] checksum = MovieSnapshot.checksum(csv);
+        Iterator<Movie> snapshot = MovieSnapshot.open(snapshotPath, checksum);
+        if (snapshot != null) {
+            logger.info("Loading movies from snapshot {}", snapshotPath);
+            return load(new CountingIterator(snapshot, progress), progress, delta);
+        }
+
+        logger.info("No snapshot of {} at {}, parsing csv", csv.getDescription(), snapshotPath);
+        try (Reader in = new InputStreamReader(csv.getInputStream(), StandardCharsets.UTF_8);
+             CSVParser parser = MovieCsv.FORMAT.parse(in);
+             MovieSnapshot.Writer writer = MovieSnapshot.create(snapshotPath, checksum)) {
+            load(writer.tee(new CsvMovieIterator(parser.iterator(), progress)), progress, delta);
+            writer.commit();
+        }
+        return progress;
+    }
+
+    /**
+     * Imports every movie of a csv file, as a delta import if {@code movie.import.delta} is set.
+     *
+     * @param in       A reader over csv content in the layout of {@link MovieCsv}
+     * @param progress Counters updated while the import runs
+     * @return The {@code progress} passed in
+     * @throws IOException if the csv cannot be read
+     */
+    public ImportProgress load(Reader in, ImportProgress progress) throws IOException {
+        return load(in, progress, delta);
+    }
+
+    /**
+     * Imports every movie of a csv file.
+     *
+     * @param in       A reader over csv content in the layout of {@link MovieCsv}
+     * @param progress Counters updated while the import runs
+     * @param delta    Whether rows are matched to stored movies by title and release year, see the class comment
+     * @return The {@code progress} passed in
+     * @throws IOException if the csv cannot be read
+     */
+    public ImportProgress load(Reader in, ImportProgress progress, boolean delta) throws IOException {
+        try (CSVParser parser = MovieCsv.FORMAT.parse(in)) {
+            return load(new CsvMovieIterator(parser.iterator(), progress), progress, delta);
+        }
+    }
+
+    /**
+     * Imports movies in chunks of {@code movie.import.batch-size}, as a delta import if {@code movie.import.delta}
+     * is set.
+     *
+     * @param source   Movies with unresolved genres, actors and director
+     * @param progress Counters updated while the import runs
+     * @return The {@code progress} passed in
+     */
+    public ImportProgress load(Iterator<Movie> source, ImportProgress progress) {
+        return load(source, progress, delta);
+    }
+
+    /**
+     * Imports movies in chunks of {@code movie.import.batch-size}.
+     *
+     * @param source   Movies with unresolved genres, actors and director
+     * @param progress Counters updated while the import runs
+     * @param delta    Whether rows are matched to stored movies by title and release year, see the class comment
+     * @return The {@code progress} passed in
+     */
+    public ImportProgress load(Iterator<Movie> source, ImportProgress progress, boolean delta) {
+        progress.start();
+        Dictionaries dictionaries = new Dictionaries(delta);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // parse on another thread while chunks are resolved and written on this one
+        try (PrefetchingIterator<Movie> movies = new PrefetchingIterator<>(source, batchSize * 2, "movie-import-parser")) {
+            List<Movie> chunk = new ArrayList<>(batchSize);
+            while (movies.hasNext()) {
+                chunk.add(movies.next());
+                if (chunk.size() == batchSize) {
+                    writeChunk(chunk, dictionaries, transactionTemplate, progress);
+                    chunk = new ArrayList<>(batchSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, dictionaries, transactionTemplate, progress);
+            }
+        } finally {
+            progress.finish();
+        }
+
+        logger.info("Imported {} movies in {} ms ({} rows/s), {} rows unchanged, {} rows rejected", progress.getRowsWritten(),
+                progress.getElapsedMillis(), Math.round(progress.getRowsPerSecond()), progress.getRowsUnchanged(),
+                progress.getRowsRejected());
+        return progress;
+    }
+
+    private void writeChunk(List<Movie> chunk, Dictionaries dictionaries, TransactionTemplate transactionTemplate, ImportProgress progress) {
+        List<Movie> created = new ArrayList<>(chunk.size());
+        List<Movie> updated = new ArrayList<>();
+        List<Movie> duplicates = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (dictionaries.genres == null) {
+                dictionaries.load(movieBulkRepository);
+            }
+            lookUpNewNames(chunk, dictionaries);
+            Map<String, Genre> newGenres = new LinkedHashMap<>();
+            Map<String, Actor> newActors = new LinkedHashMap<>();
+            Map<String, Director> newDirectors = new LinkedHashMap<>();
+
+            // ids are assigned in the order the rows reference them, the same order a row-by-row save would use
+            for (Movie movie : chunk) {
+                if (dictionaries.delta) {
+                    if (!dictionaries.imported.add(movie.getTitle() + '\u0001' + movie.getReleaseYear())) {
+                        duplicates.add(movie);
+                        continue;
+                    }
+                    movie.setContentHash(MovieCsv.contentHash(movie));
+                    MovieBulkRepository.StoredMovie stored = dictionaries.movies
+                            .getOrDefault(movie.getTitle(), Collections.emptyMap()).get(movie.getReleaseYear());
+                    if (stored != null && stored.getContentHash() != null && stored.getContentHash().equals(movie.getContentHash())) {
+                        continue;
+                    }
+                    if (stored != null) movie.setId(stored.getId());
+                }
+
+                Set<Genre> genres = new LinkedHashSet<>();
+                for (Genre genre : movie.getGenres()) {
+                    genre.setId(dictionaries.genres.computeIfAbsent(genre.getCode(), code -> {
+                        newGenres.put(code, genre);
+                        return dictionaries.nextId(movieBulkRepository, idBlockSize);
+                    }));
+                    genres.add(genre);
+                }
+                movie.setGenres(genres);
+
+                Set<Actor> actors = new LinkedHashSet<>();
+                for (Actor actor : movie.getActors()) {
+                    actor.setId(dictionaries.actors.computeIfAbsent(actor.getName(), name -> {
+                        newActors.put(name, actor);
+                        return dictionaries.nextId(movieBulkRepository, idBlockSize);
+                    }));
+                    actors.add(actor);
+                }
+                movie.setActors(actors);
+
+                Director director = movie.getDirector();
+                if (director != null) {
+                    director.setId(dictionaries.directors.computeIfAbsent(director.getName(), name -> {
+                        newDirectors.put(name, director);
+                        return dictionaries.nextId(movieBulkRepository, idBlockSize);
+                    }));
+                }
+
+                if (movie.getId() == null) {
+                    movie.setId(dictionaries.nextId(movieBulkRepository, idBlockSize));
+                    created.add(movie);
+                } else {
+                    updated.add(movie);
+                }
+                if (dictionaries.delta) {
+                    dictionaries.movies.computeIfAbsent(movie.getTitle(), title -> new HashMap<>())
+                            .put(movie.getReleaseYear(), new MovieBulkRepository.StoredMovie(movie.getId(), movie.getContentHash()));
+                }
+            }
+
+            movieBulkRepository.insertGenres(newGenres.values());
+            movieBulkRepository.insertActors(newActors.values());
+            movieBulkRepository.insertDirectors(newDirectors.values());
+            movieBulkRepository.insertMovies(created);
+            movieBulkRepository.updateMovies(updated);
+        });
+        for (Movie movie : updated) {
+            movieCache.invalidate(movie.getId());
+        }
+        for (Movie movie : duplicates) {
+            progress.rowRejected();
+            logger.warn("Rejected movie {} ({}): title and release year already imported", movie.getTitle(), movie.getReleaseYear());
+        }
+        List<Movie> written = new ArrayList<>(created);
+        written.addAll(updated);
+        movieIndexer.indexed(written);
+        progress.rowsWritten(written.size());
+        progress.rowsUnchanged(chunk.size() - written.size() - duplicates.size());
+        logger.debug("Wrote chunk of {} movies, {} so far", written.size(), progress.getRowsWritten());
+    }
+
+    /**
+     * Looks up the names of a chunk that are not in the dictionaries in the database, so that a name written since
+     * the dictionaries were loaded, for example by a concurrent create, is reused instead of inserted again.
+     */
+    private void lookUpNewNames(List<Movie> chunk, Dictionaries dictionaries) {
+        Set<String> genres = new HashSet<>();
+        Set<String> actors = new HashSet<>();
+        Set<String> directors = new HashSet<>();
+        for (Movie movie : chunk) {
+            for (Genre genre : movie.getGenres()) {
+                if (!dictionaries.genres.containsKey(genre.getCode())) genres.add(genre.getCode());
+            }
+            for (Actor actor : movie.getActors()) {
+                if (!dictionaries.actors.containsKey(actor.getName())) actors.add(actor.getName());
+            }
+            if (movie.getDirector() != null && !dictionaries.directors.containsKey(movie.getDirector().getName())) {
+                directors.add(movie.getDirector().getName());
+            }
+        }
+        if (!genres.isEmpty()) dictionaries.genres.putAll(movieBulkRepository.findGenreIds(genres));
+        if (!actors.isEmpty()) dictionaries.actors.putAll(movieBulkRepository.findActorIds(actors));
+        if (!directors.isEmpty()) dictionaries.directors.putAll(movieBulkRepository.findDirectorIds(directors));
+    }
+
+    /**
+     * Name to id dictionaries of one import, seeded from the database on first use, plus the current block of
+     * reserved ids. A delta import also keeps the stored movies and the title and release year keys imported so far.
+     */
+    private static class Dictionaries {
+        final boolean delta;
+        final Set<String> imported = new HashSet<>();
+        Map<String, Long> genres;
+        Map<String, Long> actors;
+        Map<String, Long> directors;
+        Map<String, Map<Integer, MovieBulkRepository.StoredMovie>> movies;
+        private Iterator<Long> ids;
+
+        Dictionaries(boolean delta) {
+            this.delta = delta;
+        }
+
+        void load(MovieBulkRepository repository) {
+            genres = repository.findGenreIds();
+            actors = repository.findActorIds();
+            directors = repository.findDirectorIds();
+            if (delta) movies = repository.findStoredMovies();
+        }
+
+        long nextId(MovieBulkRepository repository, int blockSize) {
+            if (ids == null || !ids.hasNext()) {
+                ids = repository.nextIds(blockSize).iterator();
+            }
+            return ids.next();
+        }
+    }
+
+    /**
+     * Counts every movie taken as a row read.
+     */
+    private static class CountingIterator implements Iterator<Movie> {
+        private final Iterator<Movie> movies;
+        private final ImportProgress progress;
+
+        CountingIterator(Iterator<Movie> movies, ImportProgress progress) {
+            this.movies = movies;
+            this.progress = progress;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return movies.hasNext();
+        }
+
+        @Override
+        public Movie next() {
+            Movie movie = movies.next();
+            progress.rowRead();
+            return movie;
+        }
+    }
+
+    /**
+     * Maps csv records to movies, skipping the header row and counting records that cannot be mapped as rejected.
+     */
+    private static class CsvMovieIterator implements Iterator<Movie> {
+        private final Iterator<CSVRecord> records;
+        private final ImportProgress progress;
+        private Movie next;
+
+        CsvMovieIterator(Iterator<CSVRecord> records, ImportProgress progress) {
+            this.records = records;
+            this.progress = progress;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && records.hasNext()) {
+                CSVRecord record = records.next();
+                if (MovieCsv.isHeader(record)) continue;
+                progress.rowRead();
+                try {
+                    next = MovieCsv.toMovie(record);
+                } catch (IllegalArgumentException e) {
+                    progress.rowRejected();
+                    logger.warn("Rejected csv record {}: {}", record.getRecordNumber(), e.getMessage());
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Movie next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Movie movie = next;
+            next = null;
+            return movie;
+        }
+    }
+}
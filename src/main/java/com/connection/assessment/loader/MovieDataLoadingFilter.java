@@ -0,0 +1,48 @@
+package com.connection.assessment.loader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers {@code /movies} and {@code /actors} requests with 503 and {@code Retry-After} until the startup import has completed, rather
+ * than serving a partial catalogue. Import endpoints stay open so the progress of the startup import, job id
+ * {@value ImportJobService#STARTUP_JOB_ID}, can be polled.
+ */
+@Component
+public class MovieDataLoadingFilter extends OncePerRequestFilter {
+
+    @Autowired
+    ImportJobService importJobService;
+
+    @Value("${movie.import.retry-after-seconds:5}")
+    int retryAfterSeconds;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean catalogue = path.equals("/movies") || path.startsWith("/movies/") || path.startsWith("/actors/");
+        return !catalogue || path.startsWith("/movies/import");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ImportJob job = importJobService.getStartupJob();
+        if (job != null && job.getStatus() == ImportJob.Status.COMPLETED) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (job == null || job.getStatus() != ImportJob.Status.FAILED) {
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        }
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Movie data is not loaded yet");
+    }
+}
@@ -0,0 +1,376 @@
+package com.connection.assessment.loader;
+
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Binary copy of the movies parsed from a csv file, so later starts can skip parsing. The file holds a header with
+ * a format version and the SHA-256 of the source csv, one record per movie, and a trailer with the record count;
+ * a snapshot with another version, another checksum, no trailer, or records that do not add up to the count in the
+ * trailer is ignored. Genre, actor and director names are written once and referenced by index afterwards.
+ * <pre>
+ * header:  int MAGIC, int VERSION, byte checksum length, checksum
+ * record:  byte 1, byte null flags, int rank, string title, string description, int year, int runtime,
+ *          double rating, int votes, double revenue, int metascore, name director,
+ *          int genre count, names, int actor count, names
+ * trailer: byte 0, int record count, int MAGIC
+ * string:  int byte length (-1 for null), utf-8 bytes
+ * name:    int index of an earlier name, or -1 followed by a string for a new one
+ * </pre>
+ */
+public final class MovieSnapshot {
+
+    static final int MAGIC = 0x4D4F5653;
+    static final int VERSION = 1;
+
+    private static final int TRAILER_LENGTH = 1 + 4 + 4;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    private static final int NO_RANK = 1;
+    private static final int NO_RUNTIME = 1 << 1;
+    private static final int NO_RATING = 1 << 2;
+    private static final int NO_VOTES = 1 << 3;
+    private static final int NO_REVENUE = 1 << 4;
+    private static final int NO_METASCORE = 1 << 5;
+    private static final int NO_DIRECTOR = 1 << 6;
+
+    private MovieSnapshot() {
+    }
+
+    /**
+     * @param source A csv resource
+     * @return SHA-256 of its content
+     * @throws IOException if the resource cannot be read
+     */
+    public static byte[] checksum(Resource source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = source.getInputStream()) {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Memory maps a snapshot if it is complete and was written from a source with the given checksum. The records
+     * are walked once without being decoded, so a snapshot that was cut short, or whose trailer does not match the
+     * records before it, is rejected before any movie is taken from it.
+     *
+     * @param path     Snapshot file
+     * @param checksum Checksum of the current source
+     * @return The movies of the snapshot, or null if there is no usable snapshot
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static Iterator<Movie> open(Path path, byte[] checksum) throws IOException {
+        if (!Files.isRegularFile(path)) return null;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            byte[] stored = new byte[buffer.get()];
+            buffer.get(stored);
+            if (!Arrays.equals(stored, checksum)) return null;
+            int end = buffer.limit() - TRAILER_LENGTH;
+            if (end < buffer.position() || buffer.get(end) != END || buffer.getInt(buffer.limit() - 4) != MAGIC) return null;
+            if (countRecords(buffer.duplicate(), end) != buffer.getInt(end + 1)) return null;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;
+        }
+        return new SnapshotIterator(buffer);
+    }
+
+    /**
+     * Skips over the records from the position of {@code records} up to {@code end}.
+     *
+     * @return The number of records, or -1 if they are malformed or do not end exactly at {@code end}
+     */
+    private static int countRecords(ByteBuffer records, int end) {
+        int count = 0;
+        int names = 0;
+        while (records.position() < end) {
+            if (records.get() != RECORD) return -1;
+            int flags = records.get();
+            records.getInt();
+            if (!skipString(records) || !skipString(records)) return -1;
+            records.position(records.position() + 4 + 4 + 8 + 4 + 8 + 4);
+            if ((flags & NO_DIRECTOR) == 0) {
+                names = skipName(records, names);
+                if (names < 0) return -1;
+            }
+            for (int lists = 0; lists < 2; lists++) {
+                int size = records.getInt();
+                if (size < 0) return -1;
+                for (int i = 0; i < size; i++) {
+                    names = skipName(records, names);
+                    if (names < 0) return -1;
+                }
+            }
+            count++;
+        }
+        return records.position() == end ? count : -1;
+    }
+
+    private static boolean skipString(ByteBuffer records) {
+        int length = records.getInt();
+        if (length < -1) return false;
+        if (length > 0) records.position(records.position() + length);
+        return true;
+    }
+
+    /**
+     * @return The number of names defined after the name, or -1 if it is malformed
+     */
+    private static int skipName(ByteBuffer records, int names) {
+        int index = records.getInt();
+        if (index == -1) return skipString(records) ? names + 1 : -1;
+        return index >= 0 && index < names ? names : -1;
+    }
+
+    /**
+     * Starts writing a snapshot to a temporary file next to {@code path}, which replaces {@code path} on
+     * {@link Writer#commit()}.
+     *
+     * @param path     Snapshot file
+     * @param checksum Checksum of the source being snapshotted
+     * @return A writer
+     * @throws IOException if the file cannot be created
+     */
+    public static Writer create(Path path, byte[] checksum) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        Writer writer = new Writer(path, tmp);
+        writer.out.writeInt(MAGIC);
+        writer.out.writeInt(VERSION);
+        writer.out.writeByte(checksum.length);
+        writer.out.write(checksum);
+        return writer;
+    }
+
+    public static class Writer implements Closeable {
+        private final Path path;
+        private final Path tmp;
+        private final DataOutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+        private int count;
+        private boolean committed;
+
+        private Writer(Path path, Path tmp) throws IOException {
+            this.path = path;
+            this.tmp = tmp;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024));
+        }
+
+        /**
+         * @param movies Movies with unresolved genres, actors and director
+         * @return The same movies, each written to the snapshot as it is taken
+         */
+        public Iterator<Movie> tee(Iterator<Movie> movies) {
+            return new Iterator<Movie>() {
+                @Override
+                public boolean hasNext() {
+                    return movies.hasNext();
+                }
+
+                @Override
+                public Movie next() {
+                    Movie movie = movies.next();
+                    try {
+                        write(movie);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return movie;
+                }
+            };
+        }
+
+        void write(Movie movie) throws IOException {
+            int flags = (movie.getMovieRank() == null ? NO_RANK : 0) | (movie.getRuntime() == null ? NO_RUNTIME : 0)
+                    | (movie.getRating() == null ? NO_RATING : 0) | (movie.getVotes() == null ? NO_VOTES : 0)
+                    | (movie.getRevenue() == null ? NO_REVENUE : 0) | (movie.getMetaScore() == null ? NO_METASCORE : 0)
+                    | (movie.getDirector() == null ? NO_DIRECTOR : 0);
+            out.writeByte(RECORD);
+            out.writeByte(flags);
+            out.writeInt(movie.getMovieRank() == null ? 0 : movie.getMovieRank());
+            writeString(movie.getTitle());
+            writeString(movie.getDescription());
+            out.writeInt(movie.getReleaseYear());
+            out.writeInt(movie.getRuntime() == null ? 0 : movie.getRuntime());
+            out.writeDouble(movie.getRating() == null ? 0 : movie.getRating());
+            out.writeInt(movie.getVotes() == null ? 0 : movie.getVotes());
+            out.writeDouble(movie.getRevenue() == null ? 0 : movie.getRevenue());
+            out.writeInt(movie.getMetaScore() == null ? 0 : movie.getMetaScore());
+            if (movie.getDirector() != null) writeName(movie.getDirector().getName());
+            out.writeInt(movie.getGenres().size());
+            for (Genre genre : movie.getGenres()) writeName(genre.getCode());
+            out.writeInt(movie.getActors().size());
+            for (Actor actor : movie.getActors()) writeName(actor.getName());
+            count++;
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeName(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                names.put(name, names.size());
+                out.writeInt(-1);
+                writeString(name);
+            }
+        }
+
+        /**
+         * Completes the snapshot and moves it into place.
+         *
+         * @throws IOException if the snapshot cannot be written
+         */
+        public void commit() throws IOException {
+            out.writeByte(END);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            out.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Discards the snapshot unless it was committed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static class SnapshotIterator implements Iterator<Movie> {
+        private final ByteBuffer buffer;
+        private final List<String> names = new ArrayList<>();
+
+        SnapshotIterator(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return buffer.get(buffer.position()) == RECORD;
+        }
+
+        @Override
+        public Movie next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            buffer.get();
+            int flags = buffer.get();
+            Movie movie = new Movie();
+            int rank = buffer.getInt();
+            if ((flags & NO_RANK) == 0) movie.setMovieRank(rank);
+            movie.setTitle(readString());
+            movie.setDescription(readString());
+            movie.setReleaseYear(buffer.getInt());
+            int runtime = buffer.getInt();
+            if ((flags & NO_RUNTIME) == 0) movie.setRuntime(runtime);
+            double rating = buffer.getDouble();
+            if ((flags & NO_RATING) == 0) movie.setRating(rating);
+            int votes = buffer.getInt();
+            if ((flags & NO_VOTES) == 0) movie.setVotes(votes);
+            double revenue = buffer.getDouble();
+            if ((flags & NO_REVENUE) == 0) movie.setRevenue(revenue);
+            int metaScore = buffer.getInt();
+            if ((flags & NO_METASCORE) == 0) movie.setMetaScore(metaScore);
+            if ((flags & NO_DIRECTOR) == 0) {
+                Director director = new Director();
+                director.setName(readName());
+                movie.setDirector(director);
+            }
+
+            int genreCount = buffer.getInt();
+            Set<Genre> genres = new LinkedHashSet<>();
+            for (int i = 0; i < genreCount; i++) {
+                Genre genre = new Genre();
+                genre.setCode(readName());
+                genres.add(genre);
+            }
+            movie.setGenres(genres);
+
+            int actorCount = buffer.getInt();
+            Set<Actor> actors = new LinkedHashSet<>();
+            for (int i = 0; i < actorCount; i++) {
+                Actor actor = new Actor();
+                actor.setName(readName());
+                actors.add(actor);
+            }
+            movie.setActors(actors);
+            return movie;
+        }
+
+        private String readString() {
+            int length = buffer.getInt();
+            if (length == -1) return null;
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String readName() {
+            int index = buffer.getInt();
+            if (index != -1) return names.get(index);
+            String name = readString();
+            names.add(name);
+            return name;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.connection.assessment.loader;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Drains a source iterator on a thread of its own into a bounded queue, so that producing elements (reading and
+ * parsing csv) overlaps with consuming them (resolving names and writing chunks). Order is preserved. A failure of
+ * the source is rethrown to the consumer once the elements before it are taken.
+ */
+final class PrefetchingIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Thread producer;
+    private volatile Throwable failure;
+    private Object next;
+
+    PrefetchingIterator(Iterator<T> source, int capacity, String name) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        producer = new Thread(() -> {
+            boolean closed = false;
+            try {
+                while (source.hasNext()) {
+                    queue.put(source.next());
+                }
+            } catch (InterruptedException e) {
+                closed = true;
+            } catch (Throwable e) {
+                // errors too, or the consumer would wait for the end forever
+                failure = e;
+            } finally {
+                if (!closed) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        // consumer is gone
+                    }
+                }
+            }
+        }, name);
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + producer.getName(), e);
+            }
+        }
+        if (next == END) {
+            Throwable cause = failure;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            if (cause != null) throw new IllegalStateException(producer.getName() + " failed", cause);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        T element = (T) next;
+        next = null;
+        return element;
+    }
+
+    /**
+     * Stops the producer if the consumer gives up early.
+     */
+    @Override
+    public void close() {
+        producer.interrupt();
+    }
+}
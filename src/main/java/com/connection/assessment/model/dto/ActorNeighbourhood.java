@@ -0,0 +1,20 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Size of an actor's co-star neighbourhood. {@code actorsPerHop} holds the number of actors first reached after one,
+ * two, ... co-star links; it stops early once no new actor is reached. {@code total} is their sum.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActorNeighbourhood {
+    private Long actorId;
+    private List<Integer> actorsPerHop;
+    private long total;
+}
@@ -0,0 +1,29 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Shortest chain of movies between two actors. Each step names an actor and the movie linking them to the actor of
+ * the next step; the last step has no movie. {@code degrees} is the number of movies in the chain.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActorPath {
+    private int degrees;
+    private List<Step> steps;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Step {
+        private Long actorId;
+        private String actorName;
+        private Long movieId;
+        private String movieTitle;
+    }
+}
@@ -0,0 +1,22 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one movie of a batch write. {@code index} is the position of the movie in the request, {@code id} is
+ * set unless the movie was rejected, in which case {@code error} says why.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResult {
+
+    public enum Status {CREATED, UPDATED, REJECTED}
+
+    private int index;
+    private Long id;
+    private Status status;
+    private String error;
+}
@@ -0,0 +1,22 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Hit and miss counters of an in-process cache.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStats {
+    private long hits;
+    private long misses;
+    private long size;
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
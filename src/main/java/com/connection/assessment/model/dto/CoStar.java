@@ -0,0 +1,17 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An actor who played in a movie together with another actor, and the number of movies they share.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CoStar {
+    private Long id;
+    private String name;
+    private int sharedMovies;
+}
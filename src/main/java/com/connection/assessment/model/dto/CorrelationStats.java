@@ -0,0 +1,17 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pearson correlation of two fields over the {@code count} movies that have both. {@code pearson} is null when it is
+ * undefined.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CorrelationStats {
+    private long count;
+    private Double pearson;
+}
@@ -0,0 +1,22 @@
+package com.connection.assessment.model.dto;
+
+import com.connection.assessment.model.entity.Movie;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Movies matching a genre filter. {@code total} and {@code genreCounts} cover every match, {@code movies} only the
+ * first {@code limit} by id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenreFilterResult {
+    private long total;
+    private Map<String, Integer> genreCounts;
+    private List<Movie> movies;
+}
@@ -0,0 +1,19 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregates of the movies in one group, for example one genre. {@code averageRating} is null when no movie of the
+ * group has a rating.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GroupStats {
+    private String key;
+    private long count;
+    private Double averageRating;
+    private double totalRevenue;
+}
@@ -0,0 +1,20 @@
+package com.connection.assessment.model.dto;
+
+import com.connection.assessment.model.entity.Movie;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A page of movies ordered by id. {@code nextCursor} is passed back as {@code after} to get the next page and is
+ * null on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MoviePage {
+    private List<Movie> movies;
+    private String nextCursor;
+}
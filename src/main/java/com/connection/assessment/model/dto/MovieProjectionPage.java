@@ -0,0 +1,20 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of movies ordered by id holding only the requested fields. {@code nextCursor} works as in
+ * {@link MoviePage}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieProjectionPage {
+    private List<Map<String, Object>> movies;
+    private String nextCursor;
+}
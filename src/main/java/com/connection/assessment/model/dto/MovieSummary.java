@@ -0,0 +1,18 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The few fields of a movie most list consumers need, served from in-memory indexes without loading the entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieSummary {
+    private Long id;
+    private String title;
+    private Integer releaseYear;
+    private Double rating;
+}
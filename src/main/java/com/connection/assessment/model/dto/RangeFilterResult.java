@@ -0,0 +1,19 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Movies matching numeric range predicates. {@code total} counts every match, {@code movies} holds the first
+ * {@code limit} by id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RangeFilterResult {
+    private long total;
+    private List<MovieSummary> movies;
+}
@@ -0,0 +1,17 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A movie matching a full-text search, with its BM25 score.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+    private Long id;
+    private String title;
+    private double score;
+}
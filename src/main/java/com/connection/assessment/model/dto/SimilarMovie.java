@@ -0,0 +1,17 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A movie similar to another one, with a similarity score between 0 and 1.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimilarMovie {
+    private Long id;
+    private String title;
+    private double score;
+}
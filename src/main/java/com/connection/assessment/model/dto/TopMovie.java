@@ -0,0 +1,18 @@
+package com.connection.assessment.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A movie on a leaderboard, with the rating, revenue or votes it is ranked by.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopMovie {
+    private Long id;
+    private String title;
+    private Integer releaseYear;
+    private double value;
+}
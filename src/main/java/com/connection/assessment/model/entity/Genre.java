@@ -7,9 +7,11 @@ import javax.persistence.*;
 @Data
 @Entity
 public class Genre {
+    public static final int MAX_CODE_LENGTH = 50;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
-    @Column(unique = true, nullable = false)
+    @Column(unique = true, nullable = false, length = MAX_CODE_LENGTH)
     private String code;
 }
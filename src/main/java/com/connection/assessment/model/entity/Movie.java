@@ -1,33 +1,39 @@
 package com.connection.assessment.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import javax.persistence.*;
-import java.util.List;
+import java.util.Set;
 
 @Data
 @Entity
 public class Movie {
 
+    public static final int MAX_TITLE_LENGTH = 255;
+
+    // sets, so that Hibernate writes only the join rows of added and removed members instead of recreating them all
     @ManyToMany()
     @JoinTable(
             name = "movie_genre",
             joinColumns = @JoinColumn(name = "movie_id"),
             inverseJoinColumns = @JoinColumn(name = "genre_id")
     )
-    List<Genre> genres;
+    @OrderBy("code")
+    Set<Genre> genres;
     @ManyToMany()
     @JoinTable(
             name = "movie_actor",
             joinColumns = @JoinColumn(name = "movie_id"),
             inverseJoinColumns = @JoinColumn(name = "actor_id")
     )
-    List<Actor> actors;
+    @OrderBy("name")
+    Set<Actor> actors;
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
     private Integer movieRank;
-    @Column(nullable = false)
+    @Column(nullable = false, length = MAX_TITLE_LENGTH)
     private String title;
     private String description;
     @Column(nullable = false)
@@ -37,6 +43,14 @@ public class Movie {
     private Integer votes;
     private Double revenue;
     private Integer metaScore;
+    // hash of the csv row the movie was last imported from, see MovieCsv.contentHash
+    @JsonIgnore
+    private String contentHash;
+    // incremented by every write, JPA or JDBC; clients see it as the ETag of the movie
+    @Version
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
 
     @ManyToOne
     @JoinColumn(name = "director_id", nullable = true, foreignKey = @javax.persistence.ForeignKey(name = "none"))
@@ -7,9 +7,11 @@ import javax.persistence.*;
 @Data
 @MappedSuperclass
 public abstract class Person {
+    public static final int MAX_NAME_LENGTH = 50;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
-    @Column(unique = true)
+    @Column(unique = true, length = MAX_NAME_LENGTH)
     private String name;
 }
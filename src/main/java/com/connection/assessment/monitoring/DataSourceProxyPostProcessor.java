@@ -0,0 +1,31 @@
+package com.connection.assessment.monitoring;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps every {@link DataSource} in a datasource-proxy that reports statements to {@link QueryLogListener}, so
+ * JPA and {@code JdbcTemplate} statements are seen alike.
+ */
+@Component
+public class DataSourceProxyPostProcessor implements BeanPostProcessor {
+
+    @Value("${movie.sql.slow-query-ms:200}")
+    long slowQueryMillis;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof ProxyDataSource)) {
+            return ProxyDataSourceBuilder.create((DataSource) bean)
+                    .name(beanName)
+                    .listener(new QueryLogListener(slowQueryMillis))
+                    .build();
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,121 @@
+package com.connection.assessment.monitoring;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The JDBC statements executed by one thread between {@link #start()} and {@link #stop()}, grouped by their
+ * normalised shape. A request handled by the servlet thread records every statement it issues, which is what makes
+ * N+1 loops visible: the same shape repeated once per row. Recordings nest: a statement counts towards every
+ * recording running on the thread, so a test measuring a request still sees it while the request records itself.
+ */
+public final class QueryLog {
+
+    private static final ThreadLocal<QueryLog> CURRENT = new ThreadLocal<>();
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final QueryLog outer;
+    private final Map<String, Integer> countsByShape = new LinkedHashMap<>();
+    private int statementCount;
+    private long elapsedMillis;
+
+    private QueryLog(QueryLog outer) {
+        this.outer = outer;
+    }
+
+    /**
+     * Starts recording the statements of the current thread, nested in any recording already running on it.
+     *
+     * @return The new recording
+     */
+    public static QueryLog start() {
+        QueryLog log = new QueryLog(CURRENT.get());
+        CURRENT.set(log);
+        return log;
+    }
+
+    /**
+     * @return The recording of the current thread, or null
+     */
+    static QueryLog current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops this recording, and any still running inside it, on the current thread; the recording it was nested in
+     * continues. The counters stay readable.
+     */
+    public void stop() {
+        for (QueryLog log = CURRENT.get(); log != null; log = log.outer) {
+            if (log == this) {
+                if (outer == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(outer);
+                }
+                return;
+            }
+        }
+    }
+
+    void record(String sql, long elapsedMillis) {
+        String shape = normalize(sql);
+        for (QueryLog log = this; log != null; log = log.outer) {
+            log.statementCount++;
+            log.elapsedMillis += elapsedMillis;
+            log.countsByShape.merge(shape, 1, Integer::sum);
+        }
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return Number of executions per normalised statement, in order of first execution
+     */
+    public Map<String, Integer> getCountsByShape() {
+        return countsByShape;
+    }
+
+    /**
+     * @return The statement shape executed most often, or null if nothing was recorded
+     */
+    public Map.Entry<String, Integer> getMostRepeated() {
+        return countsByShape.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(null);
+    }
+
+    /**
+     * Reduces a statement to its shape: literals become {@code ?}, {@code IN} lists collapse to a single
+     * {@code (?)} and whitespace is collapsed, so statements that differ only in their values compare equal.
+     *
+     * @param sql A statement
+     * @return The normalised statement
+     */
+    public static String normalize(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("(?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim().toLowerCase();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder()
+                .append(statementCount).append(" statements in ").append(elapsedMillis).append(" ms");
+        countsByShape.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()))
+                .forEach(shape -> summary.append("\n  ").append(shape.getValue()).append(" x ").append(shape.getKey()));
+        return summary.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.connection.assessment.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Records the statements of each HTTP request and logs the request when it issues more statements than
+ * {@code movie.sql.request-statement-threshold}, or repeats one statement shape at least
+ * {@code movie.sql.repeated-statement-threshold} times, the signature of an N+1 loop. Statements run on other
+ * threads, such as async streaming responses and background imports, are not attributed to the request.
+ */
+@Component
+public class QueryLogFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryLogFilter.class);
+
+    @Value("${movie.sql.request-statement-threshold:50}")
+    int statementThreshold;
+    @Value("${movie.sql.repeated-statement-threshold:10}")
+    int repeatedThreshold;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryLog log = QueryLog.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            log.stop();
+            Map.Entry<String, Integer> mostRepeated = log.getMostRepeated();
+            if (log.getStatementCount() > statementThreshold) {
+                logger.warn("{} {} issued {}", request.getMethod(), request.getRequestURI(), log);
+            } else if (mostRepeated != null && mostRepeated.getValue() >= repeatedThreshold) {
+                logger.warn("{} {} repeated {} {} times, possible N+1", request.getMethod(), request.getRequestURI(),
+                        mostRepeated.getKey(), mostRepeated.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.connection.assessment.monitoring;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Adds every executed statement to the {@link QueryLog} of the executing thread, if one is recording, and logs
+ * statements slower than a threshold. A JDBC batch counts as one statement, since it is one round-trip.
+ */
+class QueryLogListener implements QueryExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryLogListener.class);
+
+    private final long slowQueryMillis;
+
+    QueryLogListener(long slowQueryMillis) {
+        this.slowQueryMillis = slowQueryMillis;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        QueryLog log = QueryLog.current();
+        for (QueryInfo queryInfo : queryInfoList) {
+            if (log != null) {
+                log.record(queryInfo.getQuery(), execInfo.getElapsedTime());
+            }
+            if (execInfo.getElapsedTime() >= slowQueryMillis) {
+                logger.warn("Slow query ({} ms): {}", execInfo.getElapsedTime(), queryInfo.getQuery());
+            }
+        }
+    }
+}
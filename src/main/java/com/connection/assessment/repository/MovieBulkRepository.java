@@ -0,0 +1,351 @@
+package com.connection.assessment.repository;
+
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.model.entity.Person;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC batch writes against the tables mapped by the entities, for imports that would otherwise cost
+ * a round-trip per row through JPA. Ids are taken from the same sequence Hibernate uses, so rows written here
+ * and rows written through the repositories never collide.
+ */
+@Repository
+public class MovieBulkRepository {
+
+    private static final int IN_LIST_SIZE = 1000;
+
+    // on every public method: the TimedAspect of micrometer 1.9 ignores @Timed on the class
+    private static final String TIMER = "movie.bulk.repository";
+    private static final String TIMER_DESCRIPTION = "JDBC reads and batch writes of MovieBulkRepository";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Reserves a block of ids with a single round-trip.
+     *
+     * @param count Number of ids to reserve
+     * @return Reserved ids in ascending order
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public List<Long> nextIds(int count) {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT NEXT VALUE FOR hibernate_sequence FROM SYSTEM_RANGE(1, ?)", Long.class, count);
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Long> findGenreIds() {
+        return findIds("SELECT id, code FROM genre");
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Long> findActorIds() {
+        return findIds("SELECT id, name FROM actor");
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Long> findDirectorIds() {
+        return findIds("SELECT id, name FROM director");
+    }
+
+    private Map<String, Long> findIds(String sql) {
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString(2), rs.getLong(1));
+        });
+        return ids;
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Long> findGenreIds(Collection<String> codes) {
+        return findIds("SELECT id, code FROM genre WHERE code IN (%s)", codes);
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Long> findActorIds(Collection<String> names) {
+        return findIds("SELECT id, name FROM actor WHERE name IN (%s)", names);
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Long> findDirectorIds(Collection<String> names) {
+        return findIds("SELECT id, name FROM director WHERE name IN (%s)", names);
+    }
+
+    /**
+     * Looks up the ids of movies by title, one query per {@value #IN_LIST_SIZE} titles.
+     *
+     * @param titles Titles to look up
+     * @return Ids by title and release year
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Map<Integer, Long>> findMovieIds(Collection<String> titles) {
+        Map<String, Map<Integer, Long>> ids = new HashMap<>();
+        forEachInList("SELECT id, title, release_year FROM movie WHERE title IN (%s)", titles, rs -> {
+            ids.computeIfAbsent(rs.getString(2), title -> new HashMap<>()).put(rs.getInt(3), rs.getLong(1));
+        });
+        return ids;
+    }
+
+    /**
+     * @return Id and content hash of every stored movie, by title and release year
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Map<Integer, StoredMovie>> findStoredMovies() {
+        Map<String, Map<Integer, StoredMovie>> movies = new HashMap<>();
+        jdbcTemplate.query("SELECT id, title, release_year, content_hash FROM movie", rs -> {
+            movies.computeIfAbsent(rs.getString(2), title -> new HashMap<>())
+                    .put(rs.getInt(3), new StoredMovie(rs.getLong(1), rs.getString(4)));
+        });
+        return movies;
+    }
+
+    /**
+     * Reads the average rating, vote count and version of movies, one query per {@value #IN_LIST_SIZE} ids.
+     *
+     * @param ids Movie ids
+     * @return Rating, votes and version of the movies that exist
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public List<StoredVotes> findVotes(Collection<Long> ids) {
+        List<StoredVotes> votes = new ArrayList<>(ids.size());
+        forEachInList("SELECT id, COALESCE(rating, 0), COALESCE(votes, 0), version FROM movie WHERE id IN (%s)", ids, rs -> {
+            votes.add(new StoredVotes(rs.getLong(1), rs.getDouble(2), rs.getInt(3), rs.getLong(4)));
+        });
+        return votes;
+    }
+
+    private Map<String, Long> findIds(String sql, Collection<String> names) {
+        Map<String, Long> ids = new HashMap<>();
+        forEachInList(sql, names, rs -> {
+            ids.put(rs.getString(2), rs.getLong(1));
+        });
+        return ids;
+    }
+
+    private void forEachInList(String sql, Collection<?> values, RowCallbackHandler handler) {
+        List<Object> list = new ArrayList<>(values);
+        for (int from = 0; from < list.size(); from += IN_LIST_SIZE) {
+            List<Object> batch = list.subList(from, Math.min(from + IN_LIST_SIZE, list.size()));
+            String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+            jdbcTemplate.query(String.format(sql, placeholders), handler, batch.toArray());
+        }
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public void insertGenres(Collection<Genre> genres) {
+        List<Object[]> args = new ArrayList<>(genres.size());
+        for (Genre genre : genres) {
+            args.add(new Object[]{genre.getId(), genre.getCode()});
+        }
+        batchUpdate("INSERT INTO genre (id, code) VALUES (?, ?)", args);
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public void insertActors(Collection<Actor> actors) {
+        batchUpdate("INSERT INTO actor (id, name) VALUES (?, ?)", personArgs(actors));
+    }
+
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public void insertDirectors(Collection<Director> directors) {
+        batchUpdate("INSERT INTO director (id, name) VALUES (?, ?)", personArgs(directors));
+    }
+
+    private static List<Object[]> personArgs(Collection<? extends Person> people) {
+        List<Object[]> args = new ArrayList<>(people.size());
+        for (Person person : people) {
+            args.add(new Object[]{person.getId(), person.getName()});
+        }
+        return args;
+    }
+
+    /**
+     * Inserts movies with already assigned ids, together with their genre and actor join rows, and sets their
+     * version to the initial one. Genres, actors and the director must already exist.
+     *
+     * @param movies Movies to insert
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public void insertMovies(Collection<Movie> movies) {
+        List<Object[]> movieArgs = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            movie.setVersion(0L);
+            movieArgs.add(new Object[]{
+                    movie.getId(), movie.getMovieRank(), movie.getTitle(), movie.getDescription(), movie.getReleaseYear(),
+                    movie.getRuntime(), movie.getRating(), movie.getVotes(), movie.getRevenue(), movie.getMetaScore(),
+                    movie.getDirector() == null ? null : movie.getDirector().getId(), movie.getContentHash()
+            });
+        }
+        batchUpdate("INSERT INTO movie (id, movie_rank, title, description, release_year, runtime, rating, votes, revenue, meta_score, director_id, content_hash, version) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)", movieArgs);
+        insertJoinRows(movies);
+    }
+
+    /**
+     * Overwrites every column of existing movies, increments their version and replaces their genre and actor join
+     * rows. The incremented versions are read back onto the movies. The content hash is only overwritten when the
+     * movie has one. Genres, actors and the director must already exist.
+     *
+     * @param movies Movies to update, with ids
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public void updateMovies(Collection<Movie> movies) {
+        List<Object[]> movieArgs = new ArrayList<>(movies.size());
+        List<Object[]> idArgs = new ArrayList<>(movies.size());
+        Map<Long, Movie> byId = new HashMap<>();
+        for (Movie movie : movies) {
+            byId.put(movie.getId(), movie);
+            movieArgs.add(new Object[]{
+                    movie.getMovieRank(), movie.getTitle(), movie.getDescription(), movie.getReleaseYear(),
+                    movie.getRuntime(), movie.getRating(), movie.getVotes(), movie.getRevenue(), movie.getMetaScore(),
+                    movie.getDirector() == null ? null : movie.getDirector().getId(), movie.getContentHash(), movie.getId()
+            });
+            idArgs.add(new Object[]{movie.getId()});
+        }
+        batchUpdate("UPDATE movie SET movie_rank = ?, title = ?, description = ?, release_year = ?, runtime = ?, rating = ?, "
+                + "votes = ?, revenue = ?, meta_score = ?, director_id = ?, content_hash = COALESCE(?, content_hash), "
+                + "version = version + 1 WHERE id = ?", movieArgs);
+        batchUpdate("DELETE FROM movie_genre WHERE movie_id = ?", idArgs);
+        batchUpdate("DELETE FROM movie_actor WHERE movie_id = ?", idArgs);
+        insertJoinRows(movies);
+        forEachInList("SELECT id, version FROM movie WHERE id IN (%s)", byId.keySet(), rs -> {
+            byId.get(rs.getLong(1)).setVersion(rs.getLong(2));
+        });
+    }
+
+    /**
+     * Adds votes to movies, folding their ratings into the stored average rating, and increments their version.
+     *
+     * @param deltas Votes per movie
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public void addVotes(Collection<VoteDelta> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        for (VoteDelta delta : deltas) {
+            args.add(new Object[]{delta.getRatingSum(), delta.getVotes(), delta.getVotes(), delta.getId()});
+        }
+        // both assignments read the votes from before the update
+        batchUpdate("UPDATE movie SET rating = (COALESCE(rating, 0) * COALESCE(votes, 0) + ?) / (COALESCE(votes, 0) + ?), "
+                + "votes = COALESCE(votes, 0) + ?, version = version + 1 WHERE id = ?", args);
+    }
+
+    private void insertJoinRows(Collection<Movie> movies) {
+        List<Object[]> genreArgs = new ArrayList<>();
+        List<Object[]> actorArgs = new ArrayList<>();
+        for (Movie movie : movies) {
+            if (movie.getGenres() != null) {
+                for (Genre genre : movie.getGenres()) {
+                    genreArgs.add(new Object[]{movie.getId(), genre.getId()});
+                }
+            }
+            if (movie.getActors() != null) {
+                for (Actor actor : movie.getActors()) {
+                    actorArgs.add(new Object[]{movie.getId(), actor.getId()});
+                }
+            }
+        }
+        batchUpdate("INSERT INTO movie_genre (movie_id, genre_id) VALUES (?, ?)", genreArgs);
+        batchUpdate("INSERT INTO movie_actor (movie_id, actor_id) VALUES (?, ?)", actorArgs);
+    }
+
+    private void batchUpdate(String sql, List<Object[]> args) {
+        if (!args.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, args);
+        }
+    }
+
+    /**
+     * Votes cast for a movie since they were last written, and the sum of their ratings.
+     */
+    public static class VoteDelta {
+        private final long id;
+        private final long votes;
+        private final long ratingSum;
+
+        public VoteDelta(long id, long votes, long ratingSum) {
+            this.id = id;
+            this.votes = votes;
+            this.ratingSum = ratingSum;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getVotes() {
+            return votes;
+        }
+
+        public long getRatingSum() {
+            return ratingSum;
+        }
+    }
+
+    /**
+     * Id, average rating, vote count and version of a stored movie.
+     */
+    public static class StoredVotes {
+        private final long id;
+        private final double rating;
+        private final int votes;
+        private final long version;
+
+        public StoredVotes(long id, double rating, int votes, long version) {
+            this.id = id;
+            this.rating = rating;
+            this.votes = votes;
+            this.version = version;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getRating() {
+            return rating;
+        }
+
+        public int getVotes() {
+            return votes;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Id and content hash of a stored movie.
+     */
+    public static class StoredMovie {
+        private final long id;
+        private final String contentHash;
+
+        public StoredMovie(long id, String contentHash) {
+            this.id = id;
+            this.contentHash = contentHash;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.connection.assessment.repository;
+
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reads only some fields of movies. The JPQL selects just the requested columns as scalars and joins the director
+ * only when it is requested; genres and actors are read with one query per association and batch of movies, and
+ * only when requested. Every movie comes back as a map holding the requested fields, so nothing else is loaded
+ * or serialised.
+ */
+@Repository
+public class MovieProjectionRepository {
+
+    private static final int IN_LIST_SIZE = 1000;
+
+    // on every query method: the TimedAspect of micrometer 1.9 ignores @Timed on the class
+    private static final String TIMER = "movie.projection.repository";
+    private static final String TIMER_DESCRIPTION = "Projection queries of MovieProjectionRepository";
+
+    @PersistenceContext
+    EntityManager entityManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * The fields of a movie that can be requested, with the path selecting each column, or null for associations.
+     */
+    public enum Field {
+        ID("id", "m.id", Movie::getId),
+        MOVIE_RANK("movieRank", "m.movieRank", Movie::getMovieRank),
+        TITLE("title", "m.title", Movie::getTitle),
+        DESCRIPTION("description", "m.description", Movie::getDescription),
+        RELEASE_YEAR("releaseYear", "m.releaseYear", Movie::getReleaseYear),
+        RUNTIME("runtime", "m.runtime", Movie::getRuntime),
+        RATING("rating", "m.rating", Movie::getRating),
+        VOTES("votes", "m.votes", Movie::getVotes),
+        REVENUE("revenue", "m.revenue", Movie::getRevenue),
+        META_SCORE("metaScore", "m.metaScore", Movie::getMetaScore),
+        DIRECTOR("director", null, Movie::getDirector),
+        GENRES("genres", null, Movie::getGenres),
+        ACTORS("actors", null, Movie::getActors);
+
+        private final String name;
+        private final String path;
+        private final Function<Movie, Object> getter;
+
+        Field(String name, String path, Function<Movie, Object> getter) {
+            this.name = name;
+            this.path = path;
+            this.getter = getter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name A field name as serialised, for example releaseYear
+         * @return The field, or null if there is none by that name
+         */
+        public static Field of(String name) {
+            for (Field field : values()) {
+                if (field.name.equals(name)) return field;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Copies the requested fields out of a movie that is already loaded.
+     *
+     * @param movie  A movie
+     * @param fields Fields to copy
+     * @return The fields by name
+     */
+    public static Map<String, Object> project(Movie movie, Set<Field> fields) {
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (Field field : fields) {
+            projected.put(field.name, field.getter.apply(movie));
+        }
+        return projected;
+    }
+
+    /**
+     * @param fields Fields to read
+     * @param after  Only movies with a greater id are read
+     * @param limit  The maximum number of movies to read
+     * @return The movies by id, ordered by id; the keys are there even if the id is not requested
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<Long, Map<String, Object>> findPage(Set<Field> fields, long after, int limit) {
+        return find(fields, "where m.id > :after", Collections.singletonMap("after", after), limit);
+    }
+
+    /**
+     * @param fields Fields to read
+     * @param id     A movie id
+     * @return The movie, or null if there is no such movie
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public Map<String, Object> findById(Set<Field> fields, long id) {
+        return find(fields, "where m.id = :id", Collections.singletonMap("id", id), 0).get(id);
+    }
+
+    /**
+     * Reads all movies a block at a time while they are iterated, each block seeking past the last id of the one
+     * before like {@link #findPage}, so that only one block is held in memory. The blocks are read after this method
+     * returned, so each is timed on its own, under the tags the TimedAspect gives the other methods.
+     *
+     * @param fields    Fields to read
+     * @param blockSize The number of movies read per query
+     * @return All movies ordered by id
+     */
+    public Iterable<Map<String, Object>> scrollAll(Set<Field> fields, int blockSize) {
+        return () -> new Iterator<Map<String, Object>>() {
+            private Iterator<Map.Entry<Long, Map<String, Object>>> block = Collections.emptyIterator();
+            private long after;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (!block.hasNext() && !last) {
+                    Map<Long, Map<String, Object>> movies = timedBlock(() -> findPage(fields, after, blockSize));
+                    last = movies.size() < blockSize;
+                    block = movies.entrySet().iterator();
+                }
+                return block.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map.Entry<Long, Map<String, Object>> movie = block.next();
+                after = movie.getKey();
+                return movie.getValue();
+            }
+        };
+    }
+
+    private <T> T timedBlock(Supplier<T> query) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return query.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TIMER).description(TIMER_DESCRIPTION)
+                    .tags("class", MovieProjectionRepository.class.getName(), "method", "scrollAll", "exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * @param fields Fields to read
+     * @param genre  A genre code, case sensitive
+     * @return The movies of the genre ordered by id
+     */
+    @Timed(value = TIMER, description = TIMER_DESCRIPTION)
+    public List<Map<String, Object>> findByGenre(Set<Field> fields, String genre) {
+        return new ArrayList<>(find(fields, "where m.id in (select gm.id from Movie gm join gm.genres g where g.code = :genre)",
+                Collections.singletonMap("genre", genre), 0).values());
+    }
+
+    private Map<Long, Map<String, Object>> find(Set<Field> fields, String where, Map<String, Object> parameters, int limit) {
+        // the id is always selected, to order and page by it and to read the associations
+        List<Field> columns = new ArrayList<>();
+        StringBuilder jpql = new StringBuilder("select m.id");
+        for (Field field : fields) {
+            if (field.path != null && field != Field.ID) {
+                columns.add(field);
+                jpql.append(", ").append(field.path);
+            }
+        }
+        boolean director = fields.contains(Field.DIRECTOR);
+        if (director) jpql.append(", d.id, d.name");
+        jpql.append(" from Movie m");
+        if (director) jpql.append(" left join m.director d");
+        jpql.append(' ').append(where).append(" order by m.id");
+
+        TypedQuery<Object[]> query = entityManager.createQuery(jpql.toString(), Object[].class);
+        parameters.forEach(query::setParameter);
+        if (limit > 0) query.setMaxResults(limit);
+
+        Map<Long, Map<String, Object>> movies = new LinkedHashMap<>();
+        for (Object[] row : query.getResultList()) {
+            Map<String, Object> movie = new LinkedHashMap<>();
+            Long id = (Long) row[0];
+            if (fields.contains(Field.ID)) movie.put(Field.ID.name, id);
+            for (int i = 0; i < columns.size(); i++) {
+                movie.put(columns.get(i).name, row[i + 1]);
+            }
+            if (director) movie.put(Field.DIRECTOR.name, row[columns.size() + 1] == null ? null
+                    : director((Long) row[columns.size() + 1], (String) row[columns.size() + 2]));
+            movies.put(id, movie);
+        }
+        if (fields.contains(Field.GENRES)) {
+            fetch(movies, Field.GENRES, "select m.id, g.id, g.code from Movie m join m.genres g where m.id in :ids order by g.code",
+                    row -> genre((Long) row[1], (String) row[2]));
+        }
+        if (fields.contains(Field.ACTORS)) {
+            fetch(movies, Field.ACTORS, "select m.id, a.id, a.name from Movie m join m.actors a where m.id in :ids order by a.name",
+                    row -> actor((Long) row[1], (String) row[2]));
+        }
+        return movies;
+    }
+
+    private void fetch(Map<Long, Map<String, Object>> movies, Field field, String jpql, Function<Object[], Object> member) {
+        Map<Long, List<Object>> members = new HashMap<>();
+        List<Long> ids = new ArrayList<>(movies.keySet());
+        for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+            Collection<Long> batch = ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()));
+            for (Object[] row : entityManager.createQuery(jpql, Object[].class).setParameter("ids", batch).getResultList()) {
+                members.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(member.apply(row));
+            }
+        }
+        for (Map.Entry<Long, Map<String, Object>> movie : movies.entrySet()) {
+            movie.getValue().put(field.name, members.getOrDefault(movie.getKey(), Collections.emptyList()));
+        }
+    }
+
+    private static Director director(Long id, String name) {
+        Director director = new Director();
+        director.setId(id);
+        director.setName(name);
+        return director;
+    }
+
+    private static Genre genre(Long id, String code) {
+        Genre genre = new Genre();
+        genre.setId(id);
+        genre.setCode(code);
+        return genre;
+    }
+
+    private static Actor actor(Long id, String name) {
+        Actor actor = new Actor();
+        actor.setId(id);
+        actor.setName(name);
+        return actor;
+    }
+}
@@ -2,14 +2,57 @@ package com.connection.assessment.repository;
 
 import com.connection.assessment.model.entity.Genre;
 import com.connection.assessment.model.entity.Movie;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface MovieRepository extends CrudRepository<Movie, Long> {
     Movie findByTitleAndReleaseYear(String title, int year);
 
     Optional<List<Movie>> findByGenres(Genre genre);
+
+    // Read path of the list endpoints: one query for the movies with their director, then one per collection
+    // through fetchGenres and fetchActors, instead of a query per movie and association.
+
+    @Query("select m from Movie m left join fetch m.director where m.id > :after order by m.id")
+    List<Movie> findPageWithDirector(@Param("after") Long after, Pageable pageable);
+
+    @Query("select m from Movie m left join fetch m.director order by m.id")
+    List<Movie> findAllWithDirector();
+
+    @Query("select m from Movie m left join fetch m.director where m.id in (select gm.id from Movie gm join gm.genres g where g.code = :genre) order by m.id")
+    List<Movie> findByGenreWithDirector(@Param("genre") String genre);
+
+    @Query("select m from Movie m left join fetch m.director where m.id in :ids order by m.id")
+    List<Movie> findByIdsWithDirector(@Param("ids") Collection<Long> ids);
+
+    @Query("select m.version from Movie m where m.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Query("select m from Movie m left join fetch m.genres where m.id in :ids")
+    List<Movie> fetchGenres(@Param("ids") Collection<Long> ids);
+
+    @Query("select m from Movie m left join fetch m.actors where m.id in :ids")
+    List<Movie> fetchActors(@Param("ids") Collection<Long> ids);
+
+    String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+    int STREAM_FETCH_SIZE = 200;
+
+    // the director is joined in, genres and actors are fetched per block through fetchGenres and fetchActors
+    @QueryHints(@QueryHint(name = FETCH_SIZE_HINT, value = "" + STREAM_FETCH_SIZE))
+    @Query("select m from Movie m left join fetch m.director order by m.id")
+    Stream<Movie> streamAll();
+
+    @QueryHints(@QueryHint(name = FETCH_SIZE_HINT, value = "" + STREAM_FETCH_SIZE))
+    @Query("select m from Movie m left join fetch m.director join m.genres g where g.code = :genre order by m.id")
+    Stream<Movie> streamByGenre(@Param("genre") String genre);
 }
 
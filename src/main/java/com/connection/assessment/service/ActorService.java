@@ -0,0 +1,76 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.index.ActorGraph;
+import com.connection.assessment.model.dto.ActorNeighbourhood;
+import com.connection.assessment.model.dto.ActorPath;
+import com.connection.assessment.model.dto.CoStar;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Queries on the actor graph, answered from the in-memory {@link ActorGraph} without touching the database.
+ */
+@Service
+public class ActorService {
+
+    public static final int MAX_HOPS = 6;
+
+    @Autowired
+    ActorGraph actorGraph;
+
+    /**
+     * @param from An actor id
+     * @param to   Another actor id
+     * @return The shortest chain of movies connecting the two actors
+     * @throws ResponseStatusException if either actor has no movies or the actors are not connected
+     */
+    public ActorPath getPath(Long from, Long to) {
+        ActorPath path = actorGraph.path(from, to);
+        if (path == null) {
+            requireActor(from);
+            requireActor(to);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No path between actors " + from + " and " + to);
+        }
+        return path;
+    }
+
+    /**
+     * @param id    An actor id
+     * @param limit The maximum number of co-stars to return
+     * @return The actors sharing a movie with the actor, most shared movies first
+     * @throws ResponseStatusException if the limit is invalid or the actor has no movies
+     */
+    public List<CoStar> getCoStars(Long id, int limit) {
+        if (limit < 1 || limit > MovieService.MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MovieService.MAX_PAGE_SIZE);
+        }
+        List<CoStar> coStars = actorGraph.coStars(id, limit);
+        if (coStars == null) requireActor(id);
+        return coStars;
+    }
+
+    /**
+     * @param id   An actor id
+     * @param hops The number of co-star links to follow
+     * @return The number of actors first reached at each hop
+     * @throws ResponseStatusException if hops is invalid or the actor has no movies
+     */
+    public ActorNeighbourhood getNeighbourhood(Long id, int hops) {
+        if (hops < 1 || hops > MAX_HOPS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "hops must be between 1 and " + MAX_HOPS);
+        }
+        ActorNeighbourhood neighbourhood = actorGraph.neighbourhood(id, hops);
+        if (neighbourhood == null) requireActor(id);
+        return neighbourhood;
+    }
+
+    private void requireActor(Long id) {
+        if (!actorGraph.contains(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Actor not found for id: " + id);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.model.dto.CacheStats;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.repository.ActorRepository;
+import com.connection.assessment.repository.DirectorRepository;
+import com.connection.assessment.repository.GenreRepository;
+import com.connection.assessment.repository.MovieBulkRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Name to id cache in front of the genre, actor and director repositories. Misses are resolved with get-or-create
+ * semantics: the row is created in its own transaction while holding a lock for the name, so concurrent writers
+ * referencing the same new name end up with the same row instead of racing on the unique constraint. The batched
+ * lookups resolve all names missing from the cache with one query and only create the ones that are still missing.
+ */
+@Component
+public class DictionaryCache {
+
+    @Autowired
+    GenreRepository genreRepository;
+    @Autowired
+    ActorRepository actorRepository;
+    @Autowired
+    DirectorRepository directorRepository;
+    @Autowired
+    MovieBulkRepository movieBulkRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${movie.dictionary.max-size:100000}")
+    int maxSize;
+
+    private Dictionary<Genre> genres;
+    private Dictionary<Actor> actors;
+    private Dictionary<Director> directors;
+
+    @PostConstruct
+    void init() {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        genres = new Dictionary<>(maxSize, genreRepository::findByCode, movieBulkRepository::findGenreIds,
+                code -> requiresNew.execute(status -> genreRepository.save(newGenre(null, code))), DictionaryCache::newGenre, Genre::getId);
+        actors = new Dictionary<>(maxSize, actorRepository::findByName, movieBulkRepository::findActorIds,
+                name -> requiresNew.execute(status -> actorRepository.save(newActor(null, name))), DictionaryCache::newActor, Actor::getId);
+        directors = new Dictionary<>(maxSize, directorRepository::findByName, movieBulkRepository::findDirectorIds,
+                name -> requiresNew.execute(status -> directorRepository.save(newDirector(null, name))), DictionaryCache::newDirector, Director::getId);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, genres.ids, "genres");
+        CaffeineCacheMetrics.monitor(meterRegistry, actors.ids, "actors");
+        CaffeineCacheMetrics.monitor(meterRegistry, directors.ids, "directors");
+    }
+
+    /**
+     * @param code A genre code
+     * @return The genre for the code, created if it does not exist yet
+     */
+    public Genre genre(String code) {
+        return genres.getOrCreate(code);
+    }
+
+    /**
+     * @param codes Genre codes
+     * @return The genres for the codes in the order given, created if they do not exist yet
+     */
+    public Set<Genre> genres(Collection<String> codes) {
+        return genres.getOrCreateAll(codes);
+    }
+
+    /**
+     * @param name An actor name
+     * @return The actor for the name, created if it does not exist yet
+     */
+    public Actor actor(String name) {
+        return actors.getOrCreate(name);
+    }
+
+    /**
+     * @param names Actor names
+     * @return The actors for the names in the order given, created if they do not exist yet
+     */
+    public Set<Actor> actors(Collection<String> names) {
+        return actors.getOrCreateAll(names);
+    }
+
+    /**
+     * @param name A director name
+     * @return The director for the name, created if it does not exist yet
+     */
+    public Director director(String name) {
+        return directors.getOrCreate(name);
+    }
+
+    /**
+     * @return Counters per dictionary
+     */
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("genres", genres.stats());
+        stats.put("actors", actors.stats());
+        stats.put("directors", directors.stats());
+        return stats;
+    }
+
+    private static Genre newGenre(Long id, String code) {
+        Genre genre = new Genre();
+        genre.setId(id);
+        genre.setCode(code);
+        return genre;
+    }
+
+    private static Actor newActor(Long id, String name) {
+        Actor actor = new Actor();
+        actor.setId(id);
+        actor.setName(name);
+        return actor;
+    }
+
+    private static Director newDirector(Long id, String name) {
+        Director director = new Director();
+        director.setId(id);
+        director.setName(name);
+        return director;
+    }
+
+    /**
+     * Name to id map bounded by a caffeine cache. Every lookup returns a new detached instance so callers never share
+     * entities.
+     */
+    private static class Dictionary<T> {
+        private static final int LOCK_STRIPES = 64;
+
+        private final Cache<String, Long> ids;
+        private final Object[] locks = new Object[LOCK_STRIPES];
+        private final Function<String, T> finder;
+        private final Function<Collection<String>, Map<String, Long>> batchFinder;
+        private final Function<String, T> creator;
+        private final BiFunction<Long, String, T> factory;
+        private final Function<T, Long> idOf;
+
+        Dictionary(int maxSize, Function<String, T> finder, Function<Collection<String>, Map<String, Long>> batchFinder,
+                   Function<String, T> creator, BiFunction<Long, String, T> factory, Function<T, Long> idOf) {
+            this.ids = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .recordStats()
+                    .build();
+            this.finder = finder;
+            this.batchFinder = batchFinder;
+            this.creator = creator;
+            this.factory = factory;
+            this.idOf = idOf;
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                locks[i] = new Object();
+            }
+        }
+
+        T getOrCreate(String name) {
+            requireName(name);
+            Long id = ids.getIfPresent(name);
+            return factory.apply(id != null ? id : resolve(name), name);
+        }
+
+        Set<T> getOrCreateAll(Collection<String> names) {
+            Map<String, Long> resolved = new HashMap<>();
+            Set<String> missing = new LinkedHashSet<>();
+            for (String name : names) {
+                requireName(name);
+                Long id = ids.getIfPresent(name);
+                if (id != null) {
+                    resolved.put(name, id);
+                } else {
+                    missing.add(name);
+                }
+            }
+            if (!missing.isEmpty()) {
+                Map<String, Long> found = batchFinder.apply(missing);
+                for (String name : missing) {
+                    Long id = found.get(name);
+                    if (id != null) {
+                        ids.put(name, id);
+                    } else {
+                        id = resolve(name);
+                    }
+                    resolved.put(name, id);
+                }
+            }
+            Set<T> entities = new LinkedHashSet<>();
+            for (String name : names) {
+                entities.add(factory.apply(resolved.get(name), name));
+            }
+            return entities;
+        }
+
+        private static void requireName(String name) {
+            if (name == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Genre code, actor name and director name are required");
+            }
+        }
+
+        /**
+         * Finds or creates the row for a name that is not cached, under the lock of the name.
+         */
+        private Long resolve(String name) {
+            Long id;
+            synchronized (locks[(name.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES]) {
+                // read through the map view, the miss was already recorded
+                id = ids.asMap().get(name);
+                if (id == null) {
+                    T entity = finder.apply(name);
+                    if (entity == null) {
+                        try {
+                            entity = creator.apply(name);
+                        } catch (DataIntegrityViolationException e) {
+                            // created by another instance in the meantime
+                            entity = finder.apply(name);
+                            if (entity == null) throw e;
+                        }
+                    }
+                    id = idOf.apply(entity);
+                    ids.put(name, id);
+                }
+            }
+            return id;
+        }
+
+        CacheStats stats() {
+            com.github.benmanes.caffeine.cache.stats.CacheStats stats = ids.stats();
+            return new CacheStats(stats.hitCount(), stats.missCount(), ids.estimatedSize());
+        }
+    }
+}
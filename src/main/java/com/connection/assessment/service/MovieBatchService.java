@@ -0,0 +1,209 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.index.MovieIndexer;
+import com.connection.assessment.model.dto.BatchItemResult;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.model.entity.Person;
+import com.connection.assessment.repository.MovieBulkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes many movies at once. All genre, actor and director names of a batch are resolved with a few {@code IN}
+ * queries, ids for everything new come from one reserved block, and the rows are written as JDBC batches in a
+ * single transaction.
+ */
+@Service
+public class MovieBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MovieBatchService.class);
+
+    public static final int MAX_BATCH_SIZE = 10000;
+    private static final int MAX_DESCRIPTION_LENGTH = 255;
+
+    @Autowired
+    MovieBulkRepository movieBulkRepository;
+    @Autowired
+    MovieCache movieCache;
+    @Autowired
+    MovieIndexer movieIndexer;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Creates movies, or with {@code upsert} overwrites the movie with the same title and release year when there
+     * is one. Movies that fail validation are rejected without affecting the rest of the batch.
+     *
+     * @param movies Movies to write
+     * @param upsert Whether to update existing movies instead of creating duplicates
+     * @return One result per movie, in request order
+     * @throws ResponseStatusException if the batch is empty or too large
+     */
+    public List<BatchItemResult> writeMovies(List<Movie> movies, boolean upsert) {
+        if (movies == null || movies.isEmpty() || movies.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "batch must hold between 1 and " + MAX_BATCH_SIZE + " movies");
+        }
+        List<BatchItemResult> results = new ArrayList<>(movies.size());
+        Map<String, Integer> firstIndexByKey = new HashMap<>();
+        List<Integer> accepted = new ArrayList<>();
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            String error = validate(movie);
+            if (error == null && upsert) {
+                Integer first = firstIndexByKey.putIfAbsent(movie.getTitle() + '\n' + movie.getReleaseYear(), i);
+                if (first != null) error = "Duplicate of item " + first;
+            }
+            results.add(new BatchItemResult(i, null, error == null ? null : BatchItemResult.Status.REJECTED, error));
+            if (error == null) accepted.add(i);
+        }
+
+        List<Movie> created = new ArrayList<>();
+        List<Movie> updated = new ArrayList<>();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                Map<String, Map<Integer, Long>> existing = Collections.emptyMap();
+                if (upsert) {
+                    Set<String> titles = new LinkedHashSet<>();
+                    for (int i : accepted) titles.add(movies.get(i).getTitle());
+                    existing = movieBulkRepository.findMovieIds(titles);
+                }
+                for (int i : accepted) {
+                    Movie movie = movies.get(i);
+                    Long id = existing.getOrDefault(movie.getTitle(), Collections.emptyMap()).get(movie.getReleaseYear());
+                    movie.setId(id);
+                    (id == null ? created : updated).add(movie);
+                    results.get(i).setStatus(id == null ? BatchItemResult.Status.CREATED : BatchItemResult.Status.UPDATED);
+                }
+                resolve(accepted, movies, created.size());
+                movieBulkRepository.insertMovies(created);
+                movieBulkRepository.updateMovies(updated);
+            });
+        } catch (DuplicateKeyException e) {
+            // a name or movie written concurrently by another request; anything else that breaks a constraint is
+            // not fixed by a retry, and validate should have rejected it
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Batch conflicts with a concurrent write, retry it", e);
+        }
+
+        for (int i : accepted) results.get(i).setId(movies.get(i).getId());
+        for (Movie movie : updated) movieCache.invalidate(movie.getId());
+        List<Movie> written = new ArrayList<>(created);
+        written.addAll(updated);
+        movieIndexer.indexed(written);
+        logger.info("Batch of {} movies: {} created, {} updated, {} rejected", movies.size(), created.size(), updated.size(),
+                movies.size() - accepted.size());
+        return results;
+    }
+
+    private static String validate(Movie movie) {
+        if (movie == null) return "Missing movie";
+        if (!StringUtils.hasText(movie.getTitle())) return "Missing title";
+        if (movie.getTitle().length() > Movie.MAX_TITLE_LENGTH) return "Title longer than " + Movie.MAX_TITLE_LENGTH + " characters";
+        if (movie.getReleaseYear() == null) return "Missing release year";
+        if (movie.getDescription() != null && movie.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            return "Description longer than " + MAX_DESCRIPTION_LENGTH + " characters";
+        }
+        if (movie.getGenres() != null) {
+            for (Genre genre : movie.getGenres()) {
+                if (genre == null || !StringUtils.hasText(genre.getCode())) return "Missing genre code";
+                if (genre.getCode().length() > Genre.MAX_CODE_LENGTH) return "Genre code longer than " + Genre.MAX_CODE_LENGTH + " characters";
+            }
+        }
+        if (movie.getActors() != null) {
+            for (Actor actor : movie.getActors()) {
+                if (actor == null || !StringUtils.hasText(actor.getName())) return "Missing actor name";
+                if (actor.getName().length() > Person.MAX_NAME_LENGTH) return "Actor name longer than " + Person.MAX_NAME_LENGTH + " characters";
+            }
+        }
+        if (movie.getDirector() != null) {
+            if (!StringUtils.hasText(movie.getDirector().getName())) return "Missing director name";
+            if (movie.getDirector().getName().length() > Person.MAX_NAME_LENGTH) {
+                return "Director name longer than " + Person.MAX_NAME_LENGTH + " characters";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves the genres, actors and director of the accepted movies to ids, inserting the names that do not exist
+     * yet, and assigns ids to the movies to create. Ids are reserved with one round-trip for the whole batch.
+     */
+    private void resolve(List<Integer> accepted, List<Movie> movies, int newMovies) {
+        Set<String> genreCodes = new LinkedHashSet<>();
+        Set<String> actorNames = new LinkedHashSet<>();
+        Set<String> directorNames = new LinkedHashSet<>();
+        for (int i : accepted) {
+            Movie movie = movies.get(i);
+            if (movie.getGenres() != null) movie.getGenres().forEach(genre -> genreCodes.add(genre.getCode()));
+            if (movie.getActors() != null) movie.getActors().forEach(actor -> actorNames.add(actor.getName()));
+            if (movie.getDirector() != null) directorNames.add(movie.getDirector().getName());
+        }
+        Map<String, Long> genreIds = movieBulkRepository.findGenreIds(genreCodes);
+        Map<String, Long> actorIds = movieBulkRepository.findActorIds(actorNames);
+        Map<String, Long> directorIds = movieBulkRepository.findDirectorIds(directorNames);
+
+        int missing = (genreCodes.size() - genreIds.size()) + (actorNames.size() - actorIds.size())
+                + (directorNames.size() - directorIds.size()) + newMovies;
+        Iterator<Long> ids = missing == 0 ? Collections.emptyIterator() : movieBulkRepository.nextIds(missing).iterator();
+
+        Map<String, Genre> newGenres = new HashMap<>();
+        Map<String, Actor> newActors = new HashMap<>();
+        Map<String, Director> newDirectors = new HashMap<>();
+        for (int i : accepted) {
+            Movie movie = movies.get(i);
+            if (movie.getGenres() != null) {
+                Set<Genre> genres = new LinkedHashSet<>();
+                for (Genre genre : movie.getGenres()) {
+                    genre.setId(genreIds.computeIfAbsent(genre.getCode(), code -> {
+                        newGenres.put(code, genre);
+                        return ids.next();
+                    }));
+                    genres.add(genre);
+                }
+                movie.setGenres(genres);
+            }
+            if (movie.getActors() != null) {
+                Set<Actor> actors = new LinkedHashSet<>();
+                for (Actor actor : movie.getActors()) {
+                    actor.setId(actorIds.computeIfAbsent(actor.getName(), name -> {
+                        newActors.put(name, actor);
+                        return ids.next();
+                    }));
+                    actors.add(actor);
+                }
+                movie.setActors(actors);
+            }
+            Director director = movie.getDirector();
+            if (director != null) {
+                director.setId(directorIds.computeIfAbsent(director.getName(), name -> {
+                    newDirectors.put(name, director);
+                    return ids.next();
+                }));
+            }
+            if (movie.getId() == null) movie.setId(ids.next());
+        }
+
+        movieBulkRepository.insertGenres(newGenres.values());
+        movieBulkRepository.insertActors(newActors.values());
+        movieBulkRepository.insertDirectors(newDirectors.values());
+    }
+}
@@ -0,0 +1,74 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.model.dto.CacheStats;
+import com.connection.assessment.model.entity.Movie;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of single movies by id, bounded by size and time to live. Cached movies have their
+ * collections initialized and are shared between requests, so they must never be modified; writers load their own
+ * copy and invalidate the id afterwards.
+ */
+@Component
+public class MovieCache {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${movie.cache.max-size:10000}")
+    long maxSize;
+    @Value("${movie.cache.ttl-seconds:600}")
+    long ttlSeconds;
+
+    private Cache<Long, Movie> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "movie");
+    }
+
+    /**
+     * @param id     A movie id
+     * @param loader Loads the movie on a miss, returns null if there is no movie for the id
+     * @return The cached or loaded movie, or null
+     */
+    public Movie get(Long id, Function<Long, Movie> loader) {
+        return cache.get(id, loader);
+    }
+
+    /**
+     * @param id A movie id
+     * @return The cached movie, or null if it is not cached
+     */
+    public Movie getIfPresent(Long id) {
+        return cache.getIfPresent(id);
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+        return new CacheStats(stats.hitCount(), stats.missCount(), cache.estimatedSize());
+    }
+}
@@ -1,37 +1,105 @@
 package com.connection.assessment.service;
 
+import com.connection.assessment.index.ColumnarMovieStore;
+import com.connection.assessment.index.GenreIndex;
+import com.connection.assessment.index.LeaderboardIndex;
+import com.connection.assessment.index.MovieIndexer;
+import com.connection.assessment.index.SimilarityIndex;
+import com.connection.assessment.index.TextIndex;
+import com.connection.assessment.model.dto.CorrelationStats;
+import com.connection.assessment.model.dto.GenreFilterResult;
+import com.connection.assessment.model.dto.GroupStats;
+import com.connection.assessment.model.dto.MoviePage;
+import com.connection.assessment.model.dto.MovieProjectionPage;
+import com.connection.assessment.model.dto.RangeFilterResult;
+import com.connection.assessment.model.dto.SearchHit;
+import com.connection.assessment.model.dto.SimilarMovie;
+import com.connection.assessment.model.dto.TopMovie;
 import com.connection.assessment.model.entity.Actor;
 import com.connection.assessment.model.entity.Director;
 import com.connection.assessment.model.entity.Genre;
 import com.connection.assessment.model.entity.Movie;
-import com.connection.assessment.repository.ActorRepository;
-import com.connection.assessment.repository.DirectorRepository;
-import com.connection.assessment.repository.GenreRepository;
+import com.connection.assessment.repository.MovieProjectionRepository;
 import com.connection.assessment.repository.MovieRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Hibernate;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class MovieService {
 
     private static final Logger logger = LoggerFactory.getLogger(MovieService.class);
 
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MIN_VOTE = 1;
+    public static final int MAX_VOTE = 10;
+    private static final int FETCH_BATCH_SIZE = 1000;
+    private static final int UPDATE_ATTEMPTS = 3;
+
+    @Autowired
+    MovieRepository movieRepository;
     @Autowired
-    GenreRepository genreRepository;
+    MovieProjectionRepository movieProjectionRepository;
     @Autowired
-    ActorRepository actorRepository;
+    DictionaryCache dictionaryCache;
     @Autowired
-    DirectorRepository directorRepository;
+    MovieCache movieCache;
     @Autowired
-    MovieRepository movieRepository;
+    MovieIndexer movieIndexer;
+    @Autowired
+    GenreIndex genreIndex;
+    @Autowired
+    TextIndex textIndex;
+    @Autowired
+    ColumnarMovieStore columnarMovieStore;
+    @Autowired
+    SimilarityIndex similarityIndex;
+    @Autowired
+    LeaderboardIndex leaderboardIndex;
+    @Autowired
+    VoteService voteService;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    ObjectMapper objectMapper;
+    @PersistenceContext
+    EntityManager entityManager;
 
     /**
      * Create a new move
@@ -40,45 +108,23 @@ public class MovieService {
      * @return A created {@code Movie}
      */
     public Movie createMovie(Movie movie) {
-        logger.info("Post movie: " + movie);
+        logger.debug("Post movie: {}", movie);
         if (!CollectionUtils.isEmpty(movie.getGenres())) {
-            for (int i = 0; i < movie.getGenres().size(); i++) {
-                String code = movie.getGenres().get(i).getCode();
-                Genre genre = genreRepository.findByCode(code);
-                if (genre == null) {
-                    genre = new Genre();
-                    genre.setCode(code);
-                    genre = genreRepository.save(genre);
-                }
-                movie.getGenres().set(i, genre);
-            }
+            movie.setGenres(dictionaryCache.genres(names(movie.getGenres(), Genre::getCode)));
         }
 
         if (!CollectionUtils.isEmpty(movie.getActors())) {
-            for (int i = 0; i < movie.getActors().size(); i++) {
-                String name = movie.getActors().get(i).getName();
-                Actor actor = actorRepository.findByName(name);
-                if (actor == null) {
-                    actor = new Actor();
-                    actor.setName(name);
-                    actor = actorRepository.save(actor);
-                }
-                movie.getActors().set(i, actor);
-            }
+            movie.setActors(dictionaryCache.actors(names(movie.getActors(), Actor::getName)));
         }
 
         if (movie.getDirector() != null) {
-            String directorName = movie.getDirector().getName();
-            Director director = directorRepository.findByName(directorName);
-            if (director == null) {
-                director = new Director();
-                director.setName(directorName);
-                director = directorRepository.save(director);
-            }
-            movie.setDirector(director);
+            movie.setDirector(dictionaryCache.director(movie.getDirector().getName()));
         }
 
-        return movieRepository.save(movie);
+        Movie created = movieRepository.save(movie);
+        movieCache.invalidate(created.getId());
+        movieIndexer.indexed(created);
+        return created;
     }
 
     /**
@@ -89,50 +135,70 @@ public class MovieService {
      * @return An updated movie
      */
     public Movie updateMovie(Movie newMovie, Long id) {
-        Movie movie = this.getMovie(id);
-        logger.info("Updating movie with id " + id + " " + newMovie);
+        return updateMovie(newMovie, id, null);
+    }
 
-        // overwrite genres
-        if (!CollectionUtils.isEmpty(newMovie.getGenres())) {
-            List<Genre> newGenresList = new ArrayList<>();
-            for (Genre newGenres : newMovie.getGenres()) {
-                Genre genre = genreRepository.findByCode(newGenres.getCode());
-                if (genre == null) {
-                    genre = new Genre();
-                    genre.setCode(newGenres.getCode());
-                    genre = genreRepository.save(genre);
-                }
-                newGenresList.add(genre);
+    /**
+     * Update a movie. Genres, actors and the director are resolved through the dictionary cache first, as creating a
+     * missing one takes a transaction and a lock of its own that the update must not hold. Genres and actors are then
+     * replaced by applying the difference to the loaded sets, so only the join rows of added and removed members are
+     * written. The update is optimistic: it only succeeds if the version of the movie did not change since it was
+     * loaded. Without {@code ifMatch} it is retried on a concurrent write, such as a vote flush; with it, the movie
+     * must have one of the versions of the entity tags.
+     *
+     * @param newMovie A movie with updated attributes
+     * @param id       A unique identifier of the movie to update
+     * @param ifMatch  The If-Match header, or null
+     * @return An updated movie
+     * @throws ResponseStatusException if the movie is not found, does not match {@code ifMatch}, or every attempt lost
+     *                                 to a concurrent write
+     */
+    public Movie updateMovie(Movie newMovie, Long id, String ifMatch) {
+        logger.debug("Updating movie with id {} {}", id, newMovie);
+        Set<Long> versions = parseIfMatch(ifMatch);
+        Set<Genre> genres = CollectionUtils.isEmpty(newMovie.getGenres()) ? null
+                : dictionaryCache.genres(names(newMovie.getGenres(), Genre::getCode));
+        Set<Actor> actors = CollectionUtils.isEmpty(newMovie.getActors()) ? null
+                : dictionaryCache.actors(names(newMovie.getActors(), Actor::getName));
+        Director director = newMovie.getDirector() == null ? null : dictionaryCache.director(newMovie.getDirector().getName());
+        Movie updated = null;
+        for (int attempt = 1; updated == null; attempt++) {
+            try {
+                // cached movies are shared between requests, so update a freshly loaded copy
+                updated = new TransactionTemplate(transactionManager).execute(status -> {
+                    Movie movie = movieRepository.findById(id).orElseThrow(() -> notFound(id));
+                    if (versions != null && !versions.contains(movie.getVersion())) throw preconditionFailed(id);
+                    applyUpdate(movie, newMovie, genres, actors, director);
+                    Movie saved = movieRepository.save(movie);
+                    Hibernate.initialize(saved.getGenres());
+                    Hibernate.initialize(saved.getActors());
+                    return saved;
+                });
+            } catch (OptimisticLockingFailureException e) {
+                if (versions != null) throw preconditionFailed(id);
+                if (attempt == UPDATE_ATTEMPTS) throw conflict(id, e);
             }
-            movie.setGenres(newGenresList);
+        }
+        movieCache.invalidate(id);
+        movieIndexer.indexed(updated);
+        return updated;
+    }
+
+    private static void applyUpdate(Movie movie, Movie newMovie, Set<Genre> genres, Set<Actor> actors, Director director) {
+        // overwrite genres
+        if (genres != null) {
+            if (movie.getGenres() == null) movie.setGenres(new LinkedHashSet<>());
+            replaceMembers(movie.getGenres(), genres, Genre::getCode);
         }
 
         // Overwrite actors
-        if (!CollectionUtils.isEmpty(newMovie.getActors())) {
-            List<Actor> newActorList = new ArrayList<>();
-            for (Actor newActor : newMovie.getActors()) {
-                Actor actor = actorRepository.findByName(newActor.getName());
-                if (actor == null) {
-                    actor = new Actor();
-                    actor.setName(newActor.getName());
-                    actor = actorRepository.save(actor);
-                }
-                newActorList.add(actor);
-            }
-            movie.setActors(newActorList);
+        if (actors != null) {
+            if (movie.getActors() == null) movie.setActors(new LinkedHashSet<>());
+            replaceMembers(movie.getActors(), actors, Actor::getName);
         }
 
         // overwrite Director
-        if (newMovie.getDirector() != null) {
-            String newDirectorName = newMovie.getDirector().getName();
-            Director director = directorRepository.findByName(newDirectorName);
-            if (director == null) {
-                director = new Director();
-                director.setName(newDirectorName);
-                director = directorRepository.save(director);
-            }
-            movie.setDirector(director);
-        }
+        if (director != null) movie.setDirector(director);
 
         if (newMovie.getMovieRank() != null) movie.setMovieRank(newMovie.getMovieRank());
         if (newMovie.getTitle() != null) movie.setTitle(newMovie.getTitle());
@@ -142,20 +208,144 @@ public class MovieService {
         if (newMovie.getRating() != null) movie.setRating(newMovie.getRating());
         if (newMovie.getVotes() != null) movie.setVotes(newMovie.getVotes());
         if (newMovie.getRevenue() != null) movie.setRevenue(newMovie.getRevenue());
-        if (movie.getMetaScore() != null) movie.setMetaScore(newMovie.getMetaScore());
+        if (newMovie.getMetaScore() != null) movie.setMetaScore(newMovie.getMetaScore());
+    }
+
+    /**
+     * Makes {@code members} hold exactly the members of {@code replacement} by name: members not in it are removed,
+     * and only the ones not held yet are added.
+     */
+    private static <T> void replaceMembers(Set<T> members, Set<T> replacement, Function<T, String> nameOf) {
+        Set<String> names = names(replacement, nameOf);
+        members.removeIf(member -> !names.contains(nameOf.apply(member)));
+        Set<String> held = names(members, nameOf);
+        for (T member : replacement) {
+            if (!held.contains(nameOf.apply(member))) members.add(member);
+        }
+    }
 
-        return movieRepository.save(movie);
+    private static <T> Set<String> names(Collection<T> members, Function<T, String> nameOf) {
+        Set<String> names = new LinkedHashSet<>();
+        for (T member : members) {
+            names.add(member == null ? null : nameOf.apply(member));
+        }
+        return names;
     }
 
     /**
-     * Gets a movie by id
+     * Gets a movie by id, with the votes that are not written yet merged in. A cached movie is served without a
+     * transaction.
      *
      * @param id A unique identifier
      * @return A movie
      * @throws ResponseStatusException if movie is not found for the id
      */
     public Movie getMovie(Long id) {
-        return movieRepository.findById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Movie not found for id: " + id));
+        Movie movie = voteService.withPendingVotes(() -> movieCache.get(id, this::loadMovie));
+        if (movie == null) throw notFound(id);
+        return movie;
+    }
+
+    private Movie loadMovie(Long id) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> {
+            Movie movie = movieRepository.findById(id).orElse(null);
+            if (movie != null) {
+                Hibernate.initialize(movie.getGenres());
+                Hibernate.initialize(movie.getActors());
+            }
+            return movie;
+        });
+    }
+
+    /**
+     * Counts a vote for a movie. The vote is written with the other pending votes by {@link VoteService#flush()},
+     * but reads of the movie include it right away.
+     *
+     * @param id     A movie id
+     * @param rating A rating between {@value #MIN_VOTE} and {@value #MAX_VOTE}
+     * @return The movie with the vote counted
+     * @throws ResponseStatusException if the rating is invalid or the movie is not found
+     */
+    public Movie vote(Long id, int rating) {
+        if (rating < MIN_VOTE || rating > MAX_VOTE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rating must be between " + MIN_VOTE + " and " + MAX_VOTE);
+        }
+        getMovie(id);
+        voteService.vote(id, rating);
+        return getMovie(id);
+    }
+
+    private static ResponseStatusException notFound(Long id) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Movie not found for id: " + id);
+    }
+
+    private static ResponseStatusException preconditionFailed(Long id) {
+        return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Movie has changed for id: " + id);
+    }
+
+    private static ResponseStatusException conflict(Long id, Throwable cause) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, "Movie conflicts with a concurrent write for id: " + id + ", retry it", cause);
+    }
+
+    /**
+     * The entity tag of a movie: its version, and the number of its pending votes if there are any, as those are
+     * merged into the movie served. Served from the cache, or read without loading the movie.
+     *
+     * @param id A movie id
+     * @return A strong entity tag, or null if the movie is not found
+     */
+    public String getMovieETag(Long id) {
+        return voteService.consistentRead(() -> {
+            Movie cached = movieCache.getIfPresent(id);
+            Long version = cached != null ? cached.getVersion() : movieRepository.findVersionById(id);
+            return version == null ? null : movieETag(version, voteService.pendingVotes(id));
+        });
+    }
+
+    /**
+     * @param movie A movie as written, without pending votes
+     * @return The entity tag of the movie
+     */
+    public static String eTag(Movie movie) {
+        return movieETag(movie.getVersion(), 0);
+    }
+
+    private static String movieETag(long version, long pendingVotes) {
+        return "\"" + version + (pendingVotes == 0 ? "" : "." + pendingVotes) + "\"";
+    }
+
+    /**
+     * @return The entity tag of every list of movies, which changes after every write to any movie
+     */
+    public String getCatalogueETag() {
+        return "\"" + movieIndexer.getCatalogueVersion() + "\"";
+    }
+
+    /**
+     * Reads the versions out of an If-Match header. Only the version is compared, so a tag taken while votes were
+     * pending still matches.
+     *
+     * @param ifMatch An If-Match header, or null
+     * @return The versions of the tags, or null if any version matches
+     */
+    static Set<Long> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) return null;
+        Set<Long> versions = new HashSet<>();
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            // If-Match uses the strong comparison, a weak tag never matches
+            if (tag.startsWith("W/")) continue;
+            tag = tag.replace("\"", "");
+            int dot = tag.indexOf('.');
+            try {
+                versions.add(Long.parseLong(dot < 0 ? tag : tag.substring(0, dot)));
+            } catch (NumberFormatException e) {
+                // not one of our tags, so it matches no version
+            }
+        }
+        return versions;
     }
 
     /**
@@ -163,8 +353,201 @@ public class MovieService {
      *
      * @return all movies
      */
+    @Transactional(readOnly = true)
     public Iterable<Movie> getMovies() {
-        return movieRepository.findAll();
+        return fetchAssociations(movieRepository.findAllWithDirector());
+    }
+
+    /**
+     * Gets a page of movies ordered by id. The page is located by seeking past the id in the cursor, so the cost of
+     * a page does not depend on how deep into the catalogue it is.
+     *
+     * @param after A cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of movies on the page
+     * @return A page of movies
+     * @throws ResponseStatusException if the cursor or limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public MoviePage getMovies(String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        long afterId = after == null ? 0 : decodeCursor(after);
+
+        // fetch one extra row to find out whether there is a next page
+        List<Movie> movies = movieRepository.findPageWithDirector(afterId, PageRequest.of(0, limit + 1));
+        String nextCursor = null;
+        if (movies.size() > limit) {
+            movies = movies.subList(0, limit);
+            nextCursor = encodeCursor(movies.get(limit - 1).getId());
+        }
+        return new MoviePage(fetchAssociations(movies), nextCursor);
+    }
+
+    /**
+     * Gets a page of movies like {@link #getMovies(String, int)}, reading and returning only some of their fields.
+     *
+     * @param after  A cursor returned with the previous page, or null for the first page
+     * @param limit  The maximum number of movies on the page
+     * @param fields Comma separated field names, for example id,title,releaseYear,rating
+     * @return A page of movies holding only the requested fields
+     * @throws ResponseStatusException if the cursor, limit or fields are invalid
+     */
+    @Transactional(readOnly = true)
+    public MovieProjectionPage getMovies(String after, int limit, String fields) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Set<MovieProjectionRepository.Field> requested = parseFields(fields);
+        long afterId = after == null ? 0 : decodeCursor(after);
+
+        // fetch one extra row to find out whether there is a next page
+        Map<Long, Map<String, Object>> movies = movieProjectionRepository.findPage(requested, afterId, limit + 1);
+        List<Long> ids = new ArrayList<>(movies.keySet());
+        List<Map<String, Object>> page = new ArrayList<>(movies.values());
+        String nextCursor = null;
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            nextCursor = encodeCursor(ids.get(limit - 1));
+        }
+        return new MovieProjectionPage(page, nextCursor);
+    }
+
+    /**
+     * Get all movies, reading only some of their fields. The movies are read in blocks of
+     * {@link MovieRepository#STREAM_FETCH_SIZE} as they are iterated, for example while the response is written, so
+     * the catalogue is never held in memory at once.
+     *
+     * @param fields Comma separated field names
+     * @return all movies holding only the requested fields
+     * @throws ResponseStatusException if the fields are invalid
+     */
+    public Iterable<Map<String, Object>> getMovies(String fields) {
+        return movieProjectionRepository.scrollAll(parseFields(fields), MovieRepository.STREAM_FETCH_SIZE);
+    }
+
+    /**
+     * Gets the movies of a genre like {@link #getMovieForGenre(String)}, reading only some of their fields.
+     *
+     * @param genre  A genre, case sensitive
+     * @param fields Comma separated field names
+     * @return The movies of the genre holding only the requested fields
+     * @throws ResponseStatusException if the fields are invalid
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getMovieForGenre(String genre, String fields) {
+        return movieProjectionRepository.findByGenre(parseFields(fields), genre);
+    }
+
+    /**
+     * Gets some fields of a movie by id, with pending votes merged in. A cached movie is projected; on a miss only the
+     * requested fields are read, plus the votes to weigh the pending ones against the rating. That read is not
+     * cached, so a movie only requested with fields is read again every time, but never loaded whole for it.
+     *
+     * @param id     A unique identifier
+     * @param fields Comma separated field names
+     * @return The requested fields of the movie
+     * @throws ResponseStatusException if the fields are invalid or the movie is not found
+     */
+    public Map<String, Object> getMovie(Long id, String fields) {
+        Set<MovieProjectionRepository.Field> requested = parseFields(fields);
+        Movie cached = voteService.withPendingVotes(() -> movieCache.getIfPresent(id));
+        if (cached != null) return MovieProjectionRepository.project(cached, requested);
+
+        Set<MovieProjectionRepository.Field> read = EnumSet.copyOf(requested);
+        if (read.contains(MovieProjectionRepository.Field.RATING)) read.add(MovieProjectionRepository.Field.VOTES);
+        Map<String, Object> movie = voteService.withPendingVotes(id, () -> loadFields(id, read));
+        if (movie == null) throw notFound(id);
+        if (!requested.contains(MovieProjectionRepository.Field.VOTES)) movie.remove(MovieProjectionRepository.Field.VOTES.getName());
+        return movie;
+    }
+
+    private Map<String, Object> loadFields(Long id, Set<MovieProjectionRepository.Field> fields) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> movieProjectionRepository.findById(fields, id));
+    }
+
+    private static Set<MovieProjectionRepository.Field> parseFields(String fields) {
+        Set<MovieProjectionRepository.Field> requested = EnumSet.noneOf(MovieProjectionRepository.Field.class);
+        for (String name : fields.split(",")) {
+            if (name.trim().isEmpty()) continue;
+            MovieProjectionRepository.Field field = MovieProjectionRepository.Field.of(name.trim());
+            if (field == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + name.trim() + ", fields are "
+                        + Arrays.stream(MovieProjectionRepository.Field.values()).map(MovieProjectionRepository.Field::getName).collect(Collectors.joining(",")));
+            }
+            requested.add(field);
+        }
+        if (requested.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fields must name at least one field");
+        }
+        return requested;
+    }
+
+    static String encodeCursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Writes movies as newline delimited json while they are read from a database cursor. Movies are taken from the
+     * cursor in blocks of {@link MovieRepository#STREAM_FETCH_SIZE}, their genres and actors are fetched with one
+     * query per association and block, and the persistence context is cleared after every block so memory use does
+     * not grow with the catalogue.
+     *
+     * @param genre A genre to filter by, or null for all movies
+     * @param out   The stream to write to
+     */
+    public void writeMovies(String genre, OutputStream out) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Movie> movies = genre == null ? movieRepository.streamAll() : movieRepository.streamByGenre(genre)) {
+                Iterator<Movie> iterator = movies.iterator();
+                List<Movie> block = new ArrayList<>(MovieRepository.STREAM_FETCH_SIZE);
+                while (iterator.hasNext()) {
+                    block.add(iterator.next());
+                    if (block.size() == MovieRepository.STREAM_FETCH_SIZE || !iterator.hasNext()) {
+                        for (Movie movie : fetchAssociations(block)) {
+                            out.write(objectMapper.writeValueAsBytes(movie));
+                            out.write('\n');
+                        }
+                        block.clear();
+                        entityManager.clear();
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes movies read with only some of their fields as newline delimited json, for example the blocks of
+     * {@link #getMovies(String)} while they are read.
+     *
+     * @param movies The movies holding the requested fields
+     * @param out    The stream to write to
+     */
+    public void writeProjections(Iterable<Map<String, Object>> movies, OutputStream out) {
+        try {
+            for (Map<String, Object> movie : movies) {
+                out.write(objectMapper.writeValueAsBytes(movie));
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -173,11 +556,206 @@ public class MovieService {
      * @param genre A gunre, case sensative, for example Horror, Action, Drama
      * @return A list of movies that belong to the genre.
      */
+    @Transactional(readOnly = true)
     public List<Movie> getMovieForGenre(String genre) {
-        Genre genreEntity = genreRepository.findByCode(genre);
-        if (genreEntity == null) return new ArrayList<>();
+        return fetchAssociations(movieRepository.findByGenreWithDirector(genre));
+    }
+
+    /**
+     * Filters movies by combining genres on the in-memory {@link GenreIndex}. Genres are case-insensitive.
+     *
+     * @param genres  Genres to combine, all movies if empty
+     * @param op      "and" if a movie needs all {@code genres}, "or" if it needs any of them
+     * @param exclude Genres a movie must not have
+     * @param limit   The maximum number of movies to return
+     * @return The matching movies with per-genre counts of all matches
+     * @throws ResponseStatusException if the op or limit is invalid
+     */
+    @Transactional(readOnly = true)
+    public GenreFilterResult filterByGenres(Collection<String> genres, String op, Collection<String> exclude, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        GenreIndex.Op genreOp;
+        try {
+            genreOp = GenreIndex.Op.valueOf(op.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "op must be and or or");
+        }
 
-        return movieRepository.findByGenres(genreEntity).orElse(new ArrayList<>());
+        RoaringBitmap matches = genreIndex.query(genres, genreOp, exclude);
+        List<Long> ids = new ArrayList<>(Math.min(limit, matches.getCardinality()));
+        for (int id : matches) {
+            if (ids.size() == limit) break;
+            ids.add((long) id);
+        }
+        List<Movie> movies = ids.isEmpty() ? new ArrayList<>() : fetchAssociations(movieRepository.findByIdsWithDirector(ids));
+        return new GenreFilterResult(matches.getLongCardinality(), genreIndex.countByGenre(matches), movies);
+    }
+
+    /**
+     * Full-text search over titles and descriptions on the in-memory {@link TextIndex}.
+     *
+     * @param query Free text
+     * @param limit The maximum number of hits
+     * @return The best matching movies, best first
+     * @throws ResponseStatusException if the limit is invalid
+     */
+    public List<SearchHit> search(String query, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return textIndex.search(query, limit);
+    }
+
+    /**
+     * Movies similar to a movie by genres, actors, director, rating, release year and runtime, from the top
+     * neighbours the in-memory {@link SimilarityIndex} keeps per movie.
+     *
+     * @param id A movie id
+     * @param k  The number of similar movies
+     * @return The most similar movies, most similar first
+     * @throws ResponseStatusException if k is invalid or the movie is not found
+     */
+    public List<SimilarMovie> getSimilarMovies(Long id, int k) {
+        if (k < 1 || k > SimilarityIndex.MAX_K) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "k must be between 1 and " + SimilarityIndex.MAX_K);
+        }
+        List<SimilarMovie> similar = similarityIndex.similar(id, k);
+        if (similar == null) throw notFound(id);
+        return similar;
+    }
+
+    /**
+     * The top movies by rating, revenue or votes from the leaderboards of the in-memory {@link LeaderboardIndex},
+     * which are updated on every write. Votes that are not written yet are not included.
+     *
+     * @param by    rating, revenue or votes
+     * @param genre A genre the movies must have, or null for all genres
+     * @param year  The release year of the movies, or null for all years
+     * @param limit The maximum number of movies to return
+     * @return The movies with the highest value, best first
+     * @throws ResponseStatusException if by or the limit is invalid
+     */
+    public List<TopMovie> getTopMovies(String by, String genre, Integer year, int limit) {
+        LeaderboardIndex.By dimension;
+        try {
+            dimension = LeaderboardIndex.By.valueOf(by.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be one of rating, revenue and votes");
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return leaderboardIndex.top(dimension, genre, year, limit);
+    }
+
+    /**
+     * Filters movies by ranges on their numeric fields on the in-memory {@link ColumnarMovieStore}. Each parameter
+     * is one range: {@code year=2010..2016}, {@code year=2014} and open ended {@code rating=7.5..} or
+     * {@code runtime=..120}. Because a {@code =} splits a query parameter, {@code rating>=7.5} and
+     * {@code runtime<=120} arrive as {@code rating>} and {@code runtime<} and work as well, as do the strict
+     * {@code rating>7.5} and {@code runtime<120}.
+     *
+     * @param params Range parameters on year, runtime, rating, votes, revenue and metascore
+     * @param limit  The maximum number of movies to return
+     * @return The number of matching movies and the first {@code limit} of them by id
+     * @throws ResponseStatusException if a parameter or the limit is invalid
+     */
+    public RangeFilterResult filterByRanges(MultiValueMap<String, String> params, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<ColumnarMovieStore.Range> ranges = new ArrayList<>();
+        for (Map.Entry<String, List<String>> param : params.entrySet()) {
+            if (param.getKey().equals("limit")) continue;
+            for (String value : param.getValue()) {
+                try {
+                    ranges.add(parseRange(param.getKey(), value));
+                } catch (IllegalArgumentException e) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid range " + param.getKey() + "=" + value + ": " + e.getMessage());
+                }
+            }
+        }
+        return columnarMovieStore.filter(ranges, limit);
+    }
+
+    /**
+     * @return Count, average rating and total revenue per genre, ordered by genre
+     */
+    public List<GroupStats> getGenreStats() {
+        return columnarMovieStore.statsByGenre();
+    }
+
+    /**
+     * @return Count, average rating and total revenue per release year, ordered by year
+     */
+    public List<GroupStats> getYearStats() {
+        return columnarMovieStore.statsByYear();
+    }
+
+    /**
+     * @param limit The maximum number of directors to return
+     * @return Count, average rating and total revenue of the directors with the most movies
+     * @throws ResponseStatusException if the limit is invalid
+     */
+    public List<GroupStats> getDirectorStats(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return columnarMovieStore.statsByDirector().stream()
+                .sorted(Comparator.comparingLong(GroupStats::getCount).reversed().thenComparing(GroupStats::getKey))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Pearson correlation of metascore and rating
+     */
+    public CorrelationStats getMetaScoreRatingCorrelation() {
+        return columnarMovieStore.metaScoreRatingCorrelation();
+    }
+
+    private static ColumnarMovieStore.Range parseRange(String key, String value) {
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        int strict = Math.max(key.indexOf('>'), key.indexOf('<'));
+        if (key.endsWith(">")) {
+            min = Double.parseDouble(value);
+        } else if (key.endsWith("<")) {
+            max = Double.parseDouble(value);
+        } else if (strict > 0 && value.isEmpty()) {
+            double bound = Double.parseDouble(key.substring(strict + 1));
+            if (key.charAt(strict) == '>') min = Math.nextUp(bound);
+            else max = Math.nextDown(bound);
+            key = key.substring(0, strict);
+        } else if (value.contains("..")) {
+            String lower = value.substring(0, value.indexOf(".."));
+            String upper = value.substring(value.indexOf("..") + 2);
+            if (!lower.isEmpty()) min = Double.parseDouble(lower);
+            if (!upper.isEmpty()) max = Double.parseDouble(upper);
+        } else {
+            min = max = Double.parseDouble(value);
+        }
+        String column = key.endsWith(">") || key.endsWith("<") ? key.substring(0, key.length() - 1) : key;
+        return new ColumnarMovieStore.Range(ColumnarMovieStore.Column.of(column), min, max);
+    }
+
+    /**
+     * Initializes the genres and actors of movies loaded in the current persistence context with one query per
+     * association and batch of movies.
+     *
+     * @param movies Movies loaded in the current transaction
+     * @return The {@code movies} passed in
+     */
+    private List<Movie> fetchAssociations(List<Movie> movies) {
+        List<Long> ids = movies.stream().map(Movie::getId).collect(Collectors.toList());
+        for (int from = 0; from < ids.size(); from += FETCH_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + FETCH_BATCH_SIZE, ids.size()));
+            movieRepository.fetchGenres(batch);
+            movieRepository.fetchActors(batch);
+        }
+        return movies;
     }
 
     /**
@@ -186,9 +764,49 @@ public class MovieService {
      * @param id a unique identifier
      */
     public void deleteMovie(Long id) {
-        // throw 404 if movie for id does not exist.
-        if (this.getMovie(id) != null) {
-            movieRepository.deleteById(id);
+        deleteMovie(id, null);
+    }
+
+    /**
+     * Delete a movie if it matches an If-Match header. The delete is conditional on the version the movie was loaded
+     * with, so a concurrent write fails it as well. Without {@code ifMatch} it is retried on a concurrent write, such
+     * as a vote flush, like an update.
+     *
+     * @param id      a unique identifier
+     * @param ifMatch The If-Match header, or null
+     * @throws ResponseStatusException if the movie is not found, does not match {@code ifMatch}, or every attempt lost
+     *                                 to a concurrent write
+     */
+    public void deleteMovie(Long id, String ifMatch) {
+        Set<Long> versions = parseIfMatch(ifMatch);
+        Long deleted = null;
+        if (versions == null) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    deleted = new TransactionTemplate(transactionManager).execute(status -> {
+                        // throw 404 if movie for id does not exist.
+                        Movie movie = movieRepository.findById(id).orElseThrow(() -> notFound(id));
+                        movieRepository.delete(movie);
+                        return movie.getVersion();
+                    });
+                    break;
+                } catch (OptimisticLockingFailureException e) {
+                    if (attempt == UPDATE_ATTEMPTS) throw conflict(id, e);
+                }
+            }
+        } else {
+            try {
+                deleted = new TransactionTemplate(transactionManager).execute(status -> {
+                    Movie movie = movieRepository.findById(id).orElseThrow(() -> notFound(id));
+                    if (!versions.contains(movie.getVersion())) throw preconditionFailed(id);
+                    movieRepository.delete(movie);
+                    return movie.getVersion();
+                });
+            } catch (OptimisticLockingFailureException e) {
+                throw preconditionFailed(id);
+            }
         }
+        movieCache.invalidate(id);
+        movieIndexer.removed(id, deleted);
     }
 }
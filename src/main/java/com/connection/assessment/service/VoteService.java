@@ -0,0 +1,227 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.index.MovieIndexer;
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.repository.MovieBulkRepository;
+import com.connection.assessment.repository.MovieProjectionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind vote counting. A vote only adds to striped {@link LongAdder}s of its movie; every
+ * {@code movie.votes.flush-interval-ms} the pending votes of all movies are written with one batched update, which
+ * folds them into the stored vote count and average rating. Reads merge the votes that are not written yet, and
+ * the remaining votes are written on shutdown.
+ */
+@Service
+public class VoteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteService.class);
+
+    @Autowired
+    MovieBulkRepository movieBulkRepository;
+    @Autowired
+    MovieCache movieCache;
+    @Autowired
+    MovieIndexer movieIndexer;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // held exclusively while pending votes are written, so that a read never sees them both stored and pending
+    private final StampedLock flushLock = new StampedLock();
+
+    /**
+     * Votes of one movie since the last flush. A flush removes it from the map and closes it, after which it takes
+     * no more votes.
+     */
+    private static class Pending {
+        final LongAdder votes = new LongAdder();
+        final LongAdder ratingSum = new LongAdder();
+        final AtomicInteger writers = new AtomicInteger();
+        volatile boolean closed;
+
+        boolean add(int rating) {
+            writers.incrementAndGet();
+            try {
+                if (closed) return false;
+                votes.increment();
+                ratingSum.add(rating);
+                return true;
+            } finally {
+                writers.decrementAndGet();
+            }
+        }
+
+        void close() {
+            closed = true;
+            // a vote that got past the closed check before it was set is still counted
+            while (writers.get() != 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Counts a vote without writing it.
+     *
+     * @param id     A movie id
+     * @param rating The rating of the vote
+     */
+    public void vote(Long id, int rating) {
+        while (!pending.computeIfAbsent(id, key -> new Pending()).add(rating)) {
+            // the flush took this movie's votes just now, the next attempt gets a new entry
+        }
+    }
+
+    /**
+     * Reads a movie and merges its pending votes into a copy of it.
+     *
+     * @param read Reads the stored movie, may return null
+     * @return A copy of the movie with the pending votes merged, the movie itself when there are none, or null
+     */
+    public Movie withPendingVotes(Supplier<Movie> read) {
+        return consistentRead(() -> merge(read.get()));
+    }
+
+    /**
+     * Reads some fields of a movie like {@link #withPendingVotes(Supplier)}, merging the pending votes into its votes,
+     * and into its rating if that was read as well.
+     *
+     * @param id   A movie id
+     * @param read Reads the stored fields by name, including the votes if the rating is read; may return null
+     * @return A copy of the fields with the pending votes merged, the fields themselves when there are none, or null
+     */
+    public Map<String, Object> withPendingVotes(Long id, Supplier<Map<String, Object>> read) {
+        return consistentRead(() -> merge(id, read.get()));
+    }
+
+    /**
+     * Runs a read of stored movies that no flush falls into, so that what it reads agrees with
+     * {@link #pendingVotes(Long)} called from within it.
+     *
+     * @param read Reads stored movies
+     * @return The result of the read
+     */
+    public <T> T consistentRead(Supplier<T> read) {
+        long stamp = flushLock.tryOptimisticRead();
+        T result = read.get();
+        if (flushLock.validate(stamp)) return result;
+        stamp = flushLock.readLock();
+        try {
+            return read.get();
+        } finally {
+            flushLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param id A movie id
+     * @return The number of votes for the movie that are not written yet
+     */
+    public long pendingVotes(Long id) {
+        Pending votes = pending.get(id);
+        return votes == null ? 0 : votes.votes.sum();
+    }
+
+    private Movie merge(Movie movie) {
+        if (movie == null) return null;
+        Pending votes = pending.get(movie.getId());
+        if (votes == null) return movie;
+        long count = votes.votes.sum();
+        if (count == 0) return movie;
+        Movie merged = new Movie();
+        BeanUtils.copyProperties(movie, merged);
+        long stored = movie.getVotes() == null ? 0 : movie.getVotes();
+        double storedRating = movie.getRating() == null ? 0 : movie.getRating();
+        merged.setVotes(Math.toIntExact(stored + count));
+        merged.setRating((storedRating * stored + votes.ratingSum.sum()) / (stored + count));
+        return merged;
+    }
+
+    private Map<String, Object> merge(Long id, Map<String, Object> movie) {
+        String votesField = MovieProjectionRepository.Field.VOTES.getName();
+        String ratingField = MovieProjectionRepository.Field.RATING.getName();
+        if (movie == null || !movie.containsKey(votesField)) return movie;
+        Pending votes = pending.get(id);
+        if (votes == null) return movie;
+        long count = votes.votes.sum();
+        if (count == 0) return movie;
+        Map<String, Object> merged = new LinkedHashMap<>(movie);
+        long stored = movie.get(votesField) == null ? 0 : ((Number) movie.get(votesField)).longValue();
+        merged.put(votesField, Math.toIntExact(stored + count));
+        if (movie.containsKey(ratingField)) {
+            double storedRating = movie.get(ratingField) == null ? 0 : ((Number) movie.get(ratingField)).doubleValue();
+            merged.put(ratingField, (storedRating * stored + votes.ratingSum.sum()) / (stored + count));
+        }
+        return merged;
+    }
+
+    /**
+     * Writes all pending votes with one batched update, then refreshes the cache of the movies and passes their new
+     * rating and votes to the indexes. Should the update fail, the votes stay pending.
+     */
+    @Scheduled(fixedDelayString = "${movie.votes.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+        List<MovieBulkRepository.VoteDelta> deltas = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        List<MovieBulkRepository.StoredVotes> stored;
+        long stamp = flushLock.writeLock();
+        try {
+            for (Map.Entry<Long, Pending> entry : pending.entrySet()) {
+                Pending votes = entry.getValue();
+                // later votes of the movie go into a new entry
+                if (!pending.remove(entry.getKey(), votes)) continue;
+                votes.close();
+                if (votes.votes.sum() > 0) {
+                    deltas.add(new MovieBulkRepository.VoteDelta(entry.getKey(), votes.votes.sum(), votes.ratingSum.sum()));
+                    ids.add(entry.getKey());
+                }
+            }
+            try {
+                stored = new TransactionTemplate(transactionManager).execute(status -> {
+                    movieBulkRepository.addVotes(deltas);
+                    return movieBulkRepository.findVotes(ids);
+                });
+            } catch (RuntimeException e) {
+                for (MovieBulkRepository.VoteDelta delta : deltas) {
+                    Pending votes = pending.computeIfAbsent(delta.getId(), key -> new Pending());
+                    votes.votes.add(delta.getVotes());
+                    votes.ratingSum.add(delta.getRatingSum());
+                }
+                throw e;
+            }
+            for (MovieBulkRepository.VoteDelta delta : deltas) {
+                movieCache.invalidate(delta.getId());
+            }
+        } finally {
+            flushLock.unlockWrite(stamp);
+        }
+        // only rating and votes changed, so the indexes are not handed whole movies to re-derive everything else
+        movieIndexer.votesChanged(stored);
+        logger.debug("Flushed pending votes of {} movies", ids.size());
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+}
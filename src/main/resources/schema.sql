@@ -2,7 +2,7 @@
 CREATE TABLE IF NOT EXISTS director
 (
     id   BIGINT      NOT NULL AUTO_INCREMENT,
-    name VARCHAR(50) NOT NULL,
+    name VARCHAR(50) NOT NULL UNIQUE,
     PRIMARY KEY (id)
 );
 
@@ -19,6 +19,8 @@ CREATE TABLE IF NOT EXISTS movie
     revenue      DECIMAL,
     meta_score   SMALLINT,
     director_id  BIGINT,
+    content_hash VARCHAR(64),
+    version      BIGINT       DEFAULT 0 NOT NULL,
     PRIMARY KEY (id),
     FOREIGN KEY (director_id) REFERENCES director (id)
     );
@@ -26,7 +28,7 @@ CREATE TABLE IF NOT EXISTS movie
 CREATE TABLE IF NOT EXISTS genre
 (
     id   BIGINT      NOT NULL AUTO_INCREMENT,
-    code VARCHAR(50) NOT NULL,
+    code VARCHAR(50) NOT NULL UNIQUE,
     PRIMARY KEY (id)
 );
 
@@ -43,7 +45,7 @@ CREATE TABLE IF NOT EXISTS movie_genre
 CREATE TABLE IF NOT EXISTS actor
 (
     id   BIGINT      NOT NULL AUTO_INCREMENT,
-    name VARCHAR(50) NOT NULL,
+    name VARCHAR(50) NOT NULL UNIQUE,
     PRIMARY KEY (id)
 );
 
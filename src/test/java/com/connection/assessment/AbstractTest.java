@@ -1,5 +1,8 @@
 package com.connection.assessment;
 
+import com.connection.assessment.loader.ImportJob;
+import com.connection.assessment.loader.ImportJobService;
+import com.connection.assessment.monitoring.QueryLog;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -14,6 +17,10 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringBootTest(classes = ConnectionAssessmentApplication.class)
@@ -23,9 +30,31 @@ public abstract class AbstractTest {
     protected MockMvc mvc;
     @Autowired
     WebApplicationContext webApplicationContext;
+    @Autowired
+    ImportJobService importJobService;
 
     protected void setUp() {
         mvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        awaitStartupImport();
+    }
+
+    /**
+     * The movies are imported in the background after startup; tests expect the whole catalogue.
+     */
+    private void awaitStartupImport() {
+        long deadline = System.currentTimeMillis() + 300_000;
+        ImportJob job = importJobService.getStartupJob();
+        while (job == null || job.getStatus() == ImportJob.Status.QUEUED || job.getStatus() == ImportJob.Status.RUNNING) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("Startup import did not finish");
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            job = importJobService.getStartupJob();
+        }
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus(), job.getError());
     }
 
     protected String mapToJson(Object obj) throws JsonProcessingException {
@@ -39,4 +68,19 @@ public abstract class AbstractTest {
         ObjectMapper objectMapper = new ObjectMapper();
         return objectMapper.readValue(json, clazz);
     }
+
+    /**
+     * Runs {@code action} on the current thread and fails if it issues more than {@code maxStatements} JDBC
+     * statements.
+     */
+    protected <T> T assertQueryBudget(int maxStatements, Callable<T> action) throws Exception {
+        QueryLog log = QueryLog.start();
+        try {
+            T result = action.call();
+            assertTrue(log.getStatementCount() <= maxStatements, () -> "Expected at most " + maxStatements + " statements, " + log);
+            return result;
+        } finally {
+            log.stop();
+        }
+    }
 }
@@ -1,23 +1,81 @@
 package com.connection.assessment;
 
 
+import com.connection.assessment.loader.ImportProgress;
+import com.connection.assessment.loader.MovieDataLoader;
+import com.connection.assessment.model.dto.ActorNeighbourhood;
+import com.connection.assessment.model.dto.ActorPath;
+import com.connection.assessment.model.dto.BatchItemResult;
+import com.connection.assessment.model.dto.CoStar;
+import com.connection.assessment.model.dto.CorrelationStats;
+import com.connection.assessment.model.dto.GenreFilterResult;
+import com.connection.assessment.model.dto.GroupStats;
+import com.connection.assessment.model.dto.MoviePage;
+import com.connection.assessment.model.dto.MovieSummary;
+import com.connection.assessment.model.dto.RangeFilterResult;
+import com.connection.assessment.model.dto.SearchHit;
+import com.connection.assessment.model.dto.SimilarMovie;
+import com.connection.assessment.model.dto.TopMovie;
 import com.connection.assessment.model.entity.Actor;
 import com.connection.assessment.model.entity.Director;
 import com.connection.assessment.model.entity.Genre;
 import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.monitoring.QueryLog;
+import com.connection.assessment.repository.ActorRepository;
+import com.connection.assessment.repository.MovieRepository;
+import com.connection.assessment.service.MovieCache;
+import com.connection.assessment.service.MovieService;
+import com.connection.assessment.service.VoteService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MovieControllerTest extends AbstractTest {
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    MovieDataLoader movieDataLoader;
+    @Autowired
+    ActorRepository actorRepository;
+    @Autowired
+    MovieRepository movieRepository;
+    @Autowired
+    VoteService voteService;
+    @Autowired
+    MovieService movieService;
+    @Autowired
+    MovieCache movieCache;
+
     @Override
     @BeforeEach
     public void setUp() {
@@ -31,13 +89,261 @@ public class MovieControllerTest extends AbstractTest {
         MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get(uri)
                 .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
 
+        int status = mvcResult.getResponse().getStatus();
+        assertEquals(200, status);
+        String content = mvcResult.getResponse().getContentAsString();
+        MoviePage page = super.mapFromJson(content, MoviePage.class);
+        assertEquals(50, page.getMovies().size());
+        assertNotNull(page.getNextCursor());
+    }
+
+    @Test
+    public void shouldGetNextPageOfMoviesAfterCursor() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies?limit=10")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        MoviePage first = super.mapFromJson(mvcResult.getResponse().getContentAsString(), MoviePage.class);
+        assertEquals(10, first.getMovies().size());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies?limit=10&after=" + first.getNextCursor())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        MoviePage second = super.mapFromJson(mvcResult.getResponse().getContentAsString(), MoviePage.class);
+        assertEquals(10, second.getMovies().size());
+        assertTrue(second.getMovies().get(0).getId() > first.getMovies().get(9).getId());
+    }
+
+    @Test
+    public void shouldReturnOnlyRequestedFields() throws Exception {
+        QueryLog log = QueryLog.start();
+        MvcResult mvcResult;
+        try {
+            mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies").param("fields", "id,title,releaseYear,rating").param("limit", "10")
+                    .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        } finally {
+            log.stop();
+        }
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        JsonNode page = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertEquals(10, page.get("movies").size());
+        for (JsonNode movie : page.get("movies")) {
+            assertEquals(4, movie.size());
+            assertTrue(movie.has("id") && movie.has("title") && movie.has("releaseYear") && movie.has("rating"));
+        }
+        // neither unrequested columns nor associations are read
+        assertTrue(log.getCountsByShape().keySet().stream().noneMatch(sql -> sql.contains("description") || sql.contains("movie_actor")), log::toString);
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies").param("fields", "id").param("limit", "10")
+                .param("after", page.get("nextCursor").asText()).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        JsonNode next = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertTrue(next.get("movies").get(0).get("id").asLong() > page.get("movies").get(9).get("id").asLong());
+
+        Movie created = createMovie(similarityMovie("Fields Title", "Fields Genre", "Fields Actor", "Fields Director"));
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + created.getId()).param("fields", "title,genres")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        JsonNode movie = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertEquals(2, movie.size());
+        assertTrue(movie.get("genres").size() > 0);
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/filter/Action").param("fields", "id,director")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        JsonNode movies = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertTrue(movies.size() > 0);
+        for (JsonNode genreMovie : movies) {
+            assertEquals(2, genreMovie.size());
+            assertTrue(genreMovie.has("director"));
+        }
+
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.get("/movies").param("fields", "id,budget")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldReadRequestedFieldsOfUncachedMovieWithPendingVotes() throws Exception {
+        Movie movie = similarityMovie("Uncached Fields Title", "Uncached Genre", "Uncached Actor", "Uncached Director");
+        movie.setVotes(1);
+        Movie created = createMovie(movie);
+        assertEquals(202, mvc.perform(MockMvcRequestBuilders.post("/movies/" + created.getId() + "/votes").param("rating", "10"))
+                .andReturn().getResponse().getStatus());
+        movieCache.invalidate(created.getId());
+
+        QueryLog log = QueryLog.start();
+        MvcResult mvcResult;
+        try {
+            mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + created.getId()).param("fields", "title,rating")
+                    .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        } finally {
+            log.stop();
+        }
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        JsonNode fields = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertEquals(2, fields.size());
+        assertEquals("Uncached Fields Title", fields.get("title").asText());
+        assertEquals(8.5, fields.get("rating").asDouble(), 1e-9);
+        // the miss reads the requested columns only, neither the whole movie nor its associations
+        assertTrue(log.getCountsByShape().keySet().stream().noneMatch(sql -> sql.contains("description") || sql.contains("movie_actor")), log::toString);
+        assertNull(movieCache.getIfPresent(created.getId()));
+
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get("/movies/99999999").param("fields", "title")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldReadAllMoviesWithRequestedFieldsInBlocks() throws Exception {
+        long count = movieRepository.count();
+        List<Map<String, Object>> movies = new ArrayList<>();
+
+        // one query per block of movies; the last block is short, or empty when the count divides evenly
+        assertQueryBudget((int) (count / MovieRepository.STREAM_FETCH_SIZE + 1), () -> {
+            movieService.getMovies("id,title").forEach(movies::add);
+            return null;
+        });
+        assertEquals(count, movies.size());
+        long previous = 0;
+        for (Map<String, Object> movie : movies) {
+            assertEquals(2, movie.size());
+            assertTrue((Long) movie.get("id") > previous);
+            previous = (Long) movie.get("id");
+        }
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies").param("unpaged", "true").param("fields", "id,title")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        JsonNode all = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertTrue(all.isArray());
+        assertEquals(count, all.size());
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.get("/movies").param("unpaged", "true").param("fields", "id,budget"))
+                .andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldAnswerConditionalRequestsWithETags() throws Exception {
+        Movie created = createMovieWithActors("Conditional Title", "Conditional Actor");
+        String uri = "/movies/" + created.getId();
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get(uri).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        String eTag = mvcResult.getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get(uri).header("If-None-Match", eTag)).andReturn();
+        assertEquals(304, mvcResult.getResponse().getStatus());
+        assertEquals("", mvcResult.getResponse().getContentAsString());
+
+        Movie changed = new Movie();
+        changed.setRuntime(99);
+        String inputJson = super.mapToJson(changed);
+        assertEquals(412, mvc.perform(MockMvcRequestBuilders.patch(uri).header("If-Match", "\"999\"")
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(inputJson)).andReturn().getResponse().getStatus());
+        mvcResult = mvc.perform(MockMvcRequestBuilders.patch(uri).header("If-Match", eTag)
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(inputJson)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        String updatedETag = mvcResult.getResponse().getHeader("ETag");
+        assertNotNull(updatedETag);
+        assertTrue(!updatedETag.equals(eTag));
+
+        // the old tag no longer matches, neither for reads nor for writes
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get(uri).header("If-None-Match", eTag)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        assertEquals(updatedETag, mvcResult.getResponse().getHeader("ETag"));
+        assertEquals(412, mvc.perform(MockMvcRequestBuilders.delete(uri).header("If-Match", eTag)).andReturn().getResponse().getStatus());
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.delete(uri).header("If-Match", updatedETag)).andReturn().getResponse().getStatus());
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get(uri)).andReturn().getResponse().getStatus());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies").param("limit", "5")).andReturn();
+        String catalogueETag = mvcResult.getResponse().getHeader("ETag");
+        assertNotNull(catalogueETag);
+        assertEquals(304, mvc.perform(MockMvcRequestBuilders.get("/movies").param("limit", "5").header("If-None-Match", catalogueETag))
+                .andReturn().getResponse().getStatus());
+        createMovieWithActors("Conditional Title Two", "Conditional Actor");
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.get("/movies").param("limit", "5").header("If-None-Match", catalogueETag))
+                .andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldGet400ForInvalidCursor() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies?after=not*a*cursor")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(400, mvcResult.getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldGetAllMoviesWhenUnpaged() throws Exception {
+
+        String uri = "/movies?unpaged=true";
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get(uri)
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
         int status = mvcResult.getResponse().getStatus();
         assertEquals(200, status);
         String content = mvcResult.getResponse().getContentAsString();
         Movie[] movieList = super.mapFromJson(content, Movie[].class);
-        assertTrue(movieList.length > 0);
+        assertTrue(movieList.length > 50);
+    }
+
+
+    @Test
+    public void shouldStreamMoviesAsNdjson() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/filter/Action")
+                .accept("application/x-ndjson")).andReturn();
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        String[] lines = mvcResult.getResponse().getContentAsString().split("\n");
+        assertTrue(lines.length > 0);
+        for (String line : lines) {
+            Movie movie = super.mapFromJson(line, Movie.class);
+            assertTrue(movie.getGenres().stream().anyMatch(genre -> genre.getCode().equals("Action")));
+        }
+    }
+
+    @Test
+    public void shouldStreamRequestedFieldsAsNdjsonWithCatalogueETag() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies?unpaged=true&fields=id,title")
+                .accept("application/x-ndjson")).andReturn();
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        String eTag = mvcResult.getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+        String[] lines = mvcResult.getResponse().getContentAsString().split("\n");
+        assertEquals(movieRepository.count(), lines.length);
+        for (String line : lines) {
+            JsonNode movie = new ObjectMapper().readTree(line);
+            assertEquals(2, movie.size());
+            assertTrue(movie.has("id") && movie.has("title"));
+        }
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies?fields=id,title").header("If-None-Match", eTag)
+                .accept("application/x-ndjson")).andReturn();
+        assertEquals(304, mvcResult.getResponse().getStatus());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/filter/Action?fields=nope")
+                .accept("application/x-ndjson")).andReturn();
+        assertEquals(400, mvcResult.getResponse().getStatus());
     }
 
+    @Test
+    public void shouldStreamCatalogueWithQueriesPerBlockNotPerMovie() throws Exception {
+        long movies = movieRepository.count();
+        long blocks = (movies + MovieRepository.STREAM_FETCH_SIZE - 1) / MovieRepository.STREAM_FETCH_SIZE;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // one cursor over movies and directors, then genres and actors once per block
+        assertQueryBudget((int) (1 + 2 * blocks), () -> {
+            movieService.writeMovies(null, out);
+            return null;
+        });
+
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(movies, lines.length);
+        Movie first = super.mapFromJson(lines[0], Movie.class);
+        assertNotNull(first.getGenres());
+        assertNotNull(first.getActors());
+    }
 
     @Test
     public void shouldGetOneMovie() throws Exception {
@@ -68,6 +374,131 @@ public class MovieControllerTest extends AbstractTest {
     }
 
 
+    @Test
+    public void shouldFilterMoviesByCombinationOfGenres() throws Exception {
+
+        String uri = "/movies/filter?genre=action&genre=Sci-Fi&op=and&exclude=Horror&limit=1000";
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get(uri)
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        GenreFilterResult result = super.mapFromJson(mvcResult.getResponse().getContentAsString(), GenreFilterResult.class);
+        assertTrue(result.getTotal() > 0);
+        assertEquals(result.getTotal(), result.getMovies().size());
+        assertEquals(result.getTotal(), (long) result.getGenreCounts().get("Action"));
+        assertEquals(result.getTotal(), (long) result.getGenreCounts().get("Sci-Fi"));
+        assertTrue(!result.getGenreCounts().containsKey("Horror"));
+        for (Movie movie : result.getMovies()) {
+            assertTrue(movie.getGenres().stream().anyMatch(genre -> genre.getCode().equals("Action")));
+            assertTrue(movie.getGenres().stream().anyMatch(genre -> genre.getCode().equals("Sci-Fi")));
+            assertTrue(movie.getGenres().stream().noneMatch(genre -> genre.getCode().equals("Horror")));
+        }
+    }
+
+    @Test
+    public void shouldFilterMoviesByNumericRanges() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/range")
+                .param("year", "2010..2016").param("rating>", "7.5").param("runtime<", "120").param("limit", "1000")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        RangeFilterResult result = super.mapFromJson(mvcResult.getResponse().getContentAsString(), RangeFilterResult.class);
+        assertTrue(result.getTotal() > 0);
+        for (MovieSummary movie : result.getMovies()) {
+            assertTrue(movie.getReleaseYear() >= 2010 && movie.getReleaseYear() <= 2016);
+            assertTrue(movie.getRating() >= 7.5);
+            Movie full = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + movie.getId())
+                    .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+            assertTrue(full.getRuntime() <= 120);
+        }
+    }
+
+    @Test
+    public void shouldKeepRangeFilterInSyncWithWrites() throws Exception {
+        Movie movie = new Movie();
+        movie.setTitle("Range Sync Title");
+        movie.setReleaseYear(2022);
+        movie.setRuntime(997);
+        Movie created = createMovie(movie);
+        assertEquals(1, rangeFilter("runtime", "997..997", 10).getTotal());
+
+        Movie changed = new Movie();
+        changed.setRuntime(998);
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.patch("/movies/" + created.getId())
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(changed))).andReturn().getResponse().getStatus());
+        assertEquals(0, rangeFilter("runtime", "997..997", 10).getTotal());
+        assertEquals(created.getId(), rangeFilter("runtime", "998..998", 10).getMovies().get(0).getId());
+
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.delete("/movies/" + created.getId())).andReturn().getResponse().getStatus());
+        assertEquals(0, rangeFilter("runtime", "998..998", 10).getTotal());
+
+        // the first movies by id, whatever the limit
+        RangeFilterResult all = rangeFilter("year", "2006..2016", 1000);
+        RangeFilterResult first = rangeFilter("year", "2006..2016", 5);
+        assertEquals(all.getTotal(), first.getTotal());
+        assertEquals(all.getMovies().subList(0, 5), first.getMovies());
+    }
+
+    private RangeFilterResult rangeFilter(String column, String range, int limit) throws Exception {
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/range").param(column, range)
+                .param("limit", String.valueOf(limit)).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        return super.mapFromJson(mvcResult.getResponse().getContentAsString(), RangeFilterResult.class);
+    }
+
+    @Test
+    public void shouldGet400ForUnknownRangeColumn() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/range").param("budget", "1..2")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(400, mvcResult.getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldGetStatsPerGenreAndDirector() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/stats/genres")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        GroupStats[] genres = super.mapFromJson(mvcResult.getResponse().getContentAsString(), GroupStats[].class);
+        GenreFilterResult action = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/filter")
+                .param("genre", "Action").param("limit", "1")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), GenreFilterResult.class);
+        GroupStats actionStats = Arrays.stream(genres).filter(stats -> stats.getKey().equals("Action")).findFirst().orElseThrow(IllegalStateException::new);
+        assertEquals(action.getTotal(), actionStats.getCount());
+        assertTrue(actionStats.getAverageRating() > 0 && actionStats.getAverageRating() <= 10);
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/stats/directors").param("limit", "3")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        GroupStats[] directors = super.mapFromJson(mvcResult.getResponse().getContentAsString(), GroupStats[].class);
+        assertEquals(3, directors.length);
+        assertTrue(directors[0].getCount() >= directors[1].getCount() && directors[1].getCount() >= directors[2].getCount());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/stats/correlation")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        CorrelationStats correlation = super.mapFromJson(mvcResult.getResponse().getContentAsString(), CorrelationStats.class);
+        assertTrue(correlation.getCount() > 0);
+        assertTrue(correlation.getPearson() > 0 && correlation.getPearson() <= 1);
+    }
+
+    @Test
+    public void shouldSearchMoviesByTitleAndDescription() throws Exception {
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/search")
+                .param("q", "Suicide Squads").param("limit", "5").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        SearchHit[] hits = super.mapFromJson(mvcResult.getResponse().getContentAsString(), SearchHit[].class);
+        assertTrue(hits.length > 0 && hits.length <= 5);
+        assertEquals("Suicide Squad", hits[0].getTitle());
+        for (int i = 1; i < hits.length; i++) {
+            assertTrue(hits[i - 1].getScore() >= hits[i].getScore());
+        }
+    }
+
     @Test
     public void shouldFindNoMoviesForGenreThatDoesNotExist() throws Exception {
 
@@ -98,7 +529,7 @@ public class MovieControllerTest extends AbstractTest {
 
         Genre actionGenre = new Genre();
         actionGenre.setCode("Action");
-        List<Genre> genres = new ArrayList<>();
+        Set<Genre> genres = new HashSet<>();
         genres.add(actionGenre);
         movie.setGenres(genres);
 
@@ -110,7 +541,7 @@ public class MovieControllerTest extends AbstractTest {
 
         Actor actor = new Actor();
         actor.setName("Test Actor");
-        List<Actor> actors = new ArrayList<>();
+        Set<Actor> actors = new HashSet<>();
         actors.add(actor);
         movie.setActors(actors);
 
@@ -131,9 +562,9 @@ public class MovieControllerTest extends AbstractTest {
         assertEquals(movie.getRating(), response.getRating());
         assertEquals(movie.getRevenue(), response.getRevenue());
         assertEquals(movie.getMetaScore(), response.getMetaScore());
-        assertEquals(movie.getGenres().get(0).getCode(), response.getGenres().get(0).getCode());
+        assertEquals(movie.getGenres().iterator().next().getCode(), response.getGenres().iterator().next().getCode());
         assertEquals(movie.getDirector().getName(), response.getDirector().getName());
-        assertEquals(movie.getActors().get(0).getName(), response.getActors().get(0).getName());
+        assertEquals(movie.getActors().iterator().next().getName(), response.getActors().iterator().next().getName());
 
     }
 
@@ -195,4 +626,604 @@ public class MovieControllerTest extends AbstractTest {
         assertEquals(movie.getReleaseYear(), response.getReleaseYear());
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void shouldCreateAndUpsertMoviesInBatch() throws Exception {
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Movie movie = new Movie();
+            movie.setTitle("Batch Title " + i);
+            movie.setReleaseYear(2023);
+            Genre genre = new Genre();
+            genre.setCode("Batch Genre");
+            movie.setGenres(new HashSet<>(Collections.singletonList(genre)));
+            Actor actor = new Actor();
+            actor.setName("Batch Actor");
+            movie.setActors(new HashSet<>(Collections.singletonList(actor)));
+            movies.add(movie);
+        }
+        movies.add(new Movie());
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.post("/movies/batch")
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(movies))).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        BatchItemResult[] results = super.mapFromJson(mvcResult.getResponse().getContentAsString(), BatchItemResult[].class);
+        assertEquals(BatchItemResult.Status.CREATED, results[0].getStatus());
+        assertEquals(BatchItemResult.Status.CREATED, results[1].getStatus());
+        assertEquals(BatchItemResult.Status.REJECTED, results[2].getStatus());
+        Movie first = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + results[0].getId())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+        Movie second = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + results[1].getId())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+        assertEquals("Batch Genre", first.getGenres().iterator().next().getCode());
+        assertEquals(first.getActors().iterator().next().getId(), second.getActors().iterator().next().getId());
+
+        Movie upsert = movies.get(0);
+        upsert.setId(null);
+        upsert.setRating(9.5);
+        mvcResult = mvc.perform(MockMvcRequestBuilders.post("/movies/batch").param("upsert", "true")
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(Collections.singletonList(upsert)))).andReturn();
+        results = super.mapFromJson(mvcResult.getResponse().getContentAsString(), BatchItemResult[].class);
+        assertEquals(BatchItemResult.Status.UPDATED, results[0].getStatus());
+        assertEquals(first.getId(), results[0].getId());
+        Movie updated = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + first.getId())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+        assertEquals(9.5, updated.getRating());
+    }
+
+    @Test
+    public void shouldRejectBatchItemsThatDoNotFitTheirColumns() throws Exception {
+        Movie fits = new Movie();
+        fits.setTitle("Batch Column Title");
+        fits.setReleaseYear(2023);
+        Movie longTitle = new Movie();
+        longTitle.setTitle(String.join("", Collections.nCopies(256, "t")));
+        longTitle.setReleaseYear(2023);
+        Movie longActor = new Movie();
+        longActor.setTitle("Batch Column Actor");
+        longActor.setReleaseYear(2023);
+        Actor actor = new Actor();
+        actor.setName(String.join("", Collections.nCopies(51, "a")));
+        longActor.setActors(new HashSet<>(Collections.singletonList(actor)));
+        Movie longDirector = new Movie();
+        longDirector.setTitle("Batch Column Director");
+        longDirector.setReleaseYear(2023);
+        Director director = new Director();
+        director.setName(String.join("", Collections.nCopies(51, "d")));
+        longDirector.setDirector(director);
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.post("/movies/batch").contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(super.mapToJson(Arrays.asList(fits, longTitle, longActor, longDirector)))).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        BatchItemResult[] results = super.mapFromJson(mvcResult.getResponse().getContentAsString(), BatchItemResult[].class);
+        assertEquals(BatchItemResult.Status.CREATED, results[0].getStatus());
+        for (int i = 1; i < results.length; i++) {
+            assertEquals(BatchItemResult.Status.REJECTED, results[i].getStatus());
+            assertTrue(results[i].getError().contains("longer than"), results[i].getError());
+        }
+    }
+
+    @Test
+    public void shouldImportMoviesFromCsvUpload() throws Exception {
+        String csv = "Rank,Title,Genre,Description,Director,Actors,Year,Runtime (Minutes),Rating,Votes,Revenue (Millions),Metascore\n"
+                + "1,Import Test One,\"Drama,Import Genre\",First imported movie,Import Director,\"Import Actor One, Import Actor Two\",2020,100,7.5,1000,12.5,70\n"
+                + "2,Import Test Two,Drama,Second imported movie,Import Director,Import Actor One,2021,90,6.5,500,,\n"
+                + "3,Import Test Broken,Drama,Bad year,Import Director,Import Actor One,not-a-year,90,6.5,500,,\n";
+        MockMultipartFile file = new MockMultipartFile("file", "movies.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.multipart("/movies/import").file(file)).andReturn();
+        assertEquals(202, mvcResult.getResponse().getStatus());
+        String jobId = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString()).get("id").asText();
+
+        JsonNode job = null;
+        for (int i = 0; i < 100; i++) {
+            mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/import/" + jobId)
+                    .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+            job = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+            String status = job.get("status").asText();
+            if (status.equals("COMPLETED") || status.equals("FAILED")) break;
+            Thread.sleep(100);
+        }
+
+        assertEquals("COMPLETED", job.get("status").asText());
+        assertEquals(3, job.get("progress").get("rowsRead").asLong());
+        assertEquals(2, job.get("progress").get("rowsWritten").asLong());
+        assertEquals(1, job.get("progress").get("rowsRejected").asLong());
+    }
+
+    @Test
+    public void shouldRejectCsvRowsThatDoNotFitTheirColumns() throws Exception {
+        String csv = "Rank,Title,Genre,Description,Director,Actors,Year,Runtime (Minutes),Rating,Votes,Revenue (Millions),Metascore\n"
+                + "1,Column Test,Drama,Fits,Column Director,Column Actor,2020,100,7.5,1000,12.5,70\n"
+                + "2," + String.join("", Collections.nCopies(256, "t")) + ",Drama,Long title,Column Director,Column Actor,2020,100,7.5,1000,12.5,70\n"
+                + "3,Column Test Two,Drama,Long actor,Column Director," + String.join("", Collections.nCopies(51, "a")) + ",2020,100,7.5,1000,12.5,70\n";
+
+        ImportProgress progress = movieDataLoader.load(new StringReader(csv), new ImportProgress());
+
+        assertEquals(3, progress.getRowsRead());
+        assertEquals(1, progress.getRowsWritten());
+        assertEquals(2, progress.getRowsRejected());
+    }
+
+    @Test
+    public void shouldOnlyWriteNewAndChangedRowsInDeltaImport() throws Exception {
+        String header = "Rank,Title,Genre,Description,Director,Actors,Year,Runtime (Minutes),Rating,Votes,Revenue (Millions),Metascore\n";
+        String row = "1,Delta Test,Drama,Delta imported movie,Delta Director,Delta Actor,2020,100,7.5,1000,12.5,70\n";
+        String changedRow = "1,Delta Test,Drama,Delta imported movie,Delta Director,Delta Actor,2020,100,8.5,1000,12.5,70\n";
+
+        // the second row of the first file has the key of the first one, so it is rejected rather than overwriting it
+        ImportProgress first = movieDataLoader.load(new StringReader(header + row + changedRow), new ImportProgress(), true);
+        assertEquals(1, first.getRowsWritten());
+        assertEquals(1, first.getRowsRejected());
+
+        ImportProgress unchanged = movieDataLoader.load(new StringReader(header + row), new ImportProgress(), true);
+        assertEquals(0, unchanged.getRowsWritten());
+        assertEquals(1, unchanged.getRowsUnchanged());
+
+        ImportProgress changed = movieDataLoader.load(new StringReader(header + changedRow), new ImportProgress(), true);
+        assertEquals(1, changed.getRowsWritten());
+        assertEquals(0, changed.getRowsUnchanged());
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/search").param("q", "Delta Test imported")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        SearchHit[] hits = super.mapFromJson(mvcResult.getResponse().getContentAsString(), SearchHit[].class);
+        assertEquals("Delta Test", hits[0].getTitle());
+        assertEquals(1, Arrays.stream(hits).filter(hit -> hit.getTitle().equals("Delta Test")).count());
+        Movie movie = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + hits[0].getId())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+        assertEquals(8.5, movie.getRating());
+    }
+
+    @Test
+    public void shouldMergePendingVotesAndFlushThem() throws Exception {
+        Movie movie = new Movie();
+        movie.setTitle("Vote Test");
+        movie.setReleaseYear(2022);
+        movie.setRating(5.0);
+        movie.setVotes(1);
+        Movie created = createMovie(movie);
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.post("/movies/" + created.getId() + "/votes")
+                    .param("rating", "10")).andReturn();
+            assertEquals(202, mvcResult.getResponse().getStatus());
+        }
+        Movie voted = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + created.getId())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+        assertEquals(3, voted.getVotes());
+        assertEquals(25.0 / 3, voted.getRating(), 1e-9);
+
+        voteService.flush();
+        Movie stored = movieRepository.findById(created.getId()).orElseThrow(IllegalStateException::new);
+        assertEquals(3, stored.getVotes());
+        assertEquals(25.0 / 3, stored.getRating(), 1e-9);
+        Movie flushed = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/" + created.getId())
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), Movie.class);
+        assertEquals(3, flushed.getVotes());
+        // the flush hands only the new rating and votes to the indexes
+        TopMovie ranked = Arrays.stream(topMovies("votes", null, 2022, 1000)).filter(top -> top.getId().equals(created.getId()))
+                .findFirst().orElseThrow(IllegalStateException::new);
+        assertEquals(3.0, ranked.getValue());
+        ranked = Arrays.stream(topMovies("rating", null, 2022, 1000)).filter(top -> top.getId().equals(created.getId()))
+                .findFirst().orElseThrow(IllegalStateException::new);
+        assertEquals(25.0 / 3, ranked.getValue(), 1e-9);
+
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.post("/movies/" + created.getId() + "/votes").param("rating", "11")).andReturn().getResponse().getStatus());
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.post("/movies/99999999/votes").param("rating", "5")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldFindSimilarMovies() throws Exception {
+        Movie first = createMovie(similarityMovie("Similar Movie One", "Similar Genre", "Similar Actor", "Similar Director"));
+        Movie second = createMovie(similarityMovie("Similar Movie Two", "Similar Genre", "Similar Actor", "Similar Director"));
+        // a shared genre alone does not make a candidate
+        Movie genreOnly = createMovie(similarityMovie("Similar Movie Three", "Similar Genre", "Genre Only Actor", "Genre Only Director"));
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + first.getId() + "/similar").param("k", "5")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        SimilarMovie[] similar = super.mapFromJson(mvcResult.getResponse().getContentAsString(), SimilarMovie[].class);
+        assertTrue(similar.length >= 1 && similar.length <= 5);
+        assertEquals(second.getId(), similar[0].getId());
+        assertTrue(similar[0].getScore() > 0.85);
+        assertTrue(Arrays.stream(similar).noneMatch(movie -> movie.getId().equals(genreOnly.getId())));
+
+        Movie changed = similarityMovie("Similar Movie Two", "Other Similar Genre", "Other Similar Actor", "Other Similar Director");
+        mvcResult = mvc.perform(MockMvcRequestBuilders.patch("/movies/" + second.getId())
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(changed))).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + first.getId() + "/similar")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        similar = super.mapFromJson(mvcResult.getResponse().getContentAsString(), SimilarMovie[].class);
+        assertTrue(Arrays.stream(similar).noneMatch(movie -> movie.getId().equals(second.getId())));
+
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.get("/movies/" + first.getId() + "/similar").param("k", "0")).andReturn().getResponse().getStatus());
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get("/movies/99999999/similar")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldKeepTopMoviesUpToDate() throws Exception {
+        Movie first = createMovie(similarityMovie("Top Movie One", "Top Genre", "Top Actor", "Top Director"));
+        Movie second = similarityMovie("Top Movie Two", "Top Genre", "Top Actor", "Top Director");
+        second.setRating(8.0);
+        second = createMovie(second);
+
+        TopMovie[] top = topMovies("rating", "top genre", null, 10);
+        assertEquals(2, top.length);
+        assertEquals(second.getId(), top[0].getId());
+        assertEquals(8.0, top[0].getValue());
+        assertEquals(first.getId(), top[1].getId());
+
+        Movie changed = new Movie();
+        changed.setRating(9.5);
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.patch("/movies/" + first.getId())
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(changed))).andReturn().getResponse().getStatus());
+        top = topMovies("rating", "Top Genre", 2022, 10);
+        assertEquals(first.getId(), top[0].getId());
+        assertEquals(9.5, top[0].getValue());
+
+        mvc.perform(MockMvcRequestBuilders.delete("/movies/" + second.getId())).andReturn();
+        top = topMovies("rating", "Top Genre", null, 10);
+        assertEquals(1, top.length);
+        assertEquals(0, topMovies("rating", "Top Genre", 2021, 10).length);
+
+        top = topMovies("votes", null, null, 5);
+        assertEquals(5, top.length);
+        for (int i = 1; i < top.length; i++) {
+            assertTrue(top[i - 1].getValue() >= top[i].getValue());
+        }
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.get("/movies/top").param("by", "title")).andReturn().getResponse().getStatus());
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.get("/movies/top").param("limit", "0")).andReturn().getResponse().getStatus());
+    }
+
+    private TopMovie[] topMovies(String by, String genre, Integer year, int limit) throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get("/movies/top").param("by", by)
+                .param("limit", String.valueOf(limit)).accept(MediaType.APPLICATION_JSON_VALUE);
+        if (genre != null) request.param("genre", genre);
+        if (year != null) request.param("year", String.valueOf(year));
+        MvcResult mvcResult = mvc.perform(request).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        return super.mapFromJson(mvcResult.getResponse().getContentAsString(), TopMovie[].class);
+    }
+
+    private static Movie similarityMovie(String title, String genreCode, String actorName, String directorName) {
+        Movie movie = new Movie();
+        movie.setTitle(title);
+        movie.setReleaseYear(2022);
+        movie.setRating(7.0);
+        movie.setRuntime(100);
+        Genre genre = new Genre();
+        genre.setCode(genreCode);
+        movie.setGenres(new HashSet<>(Collections.singletonList(genre)));
+        Actor actor = new Actor();
+        actor.setName(actorName);
+        movie.setActors(new HashSet<>(Collections.singletonList(actor)));
+        Director director = new Director();
+        director.setName(directorName);
+        movie.setDirector(director);
+        return movie;
+    }
+
+    private Movie createMovie(Movie movie) throws Exception {
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.post("/movies")
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(movie))).andReturn();
+        assertEquals(201, mvcResult.getResponse().getStatus());
+        return super.mapFromJson(mvcResult.getResponse().getContentAsString(), Movie.class);
+    }
+
+    @Test
+    public void shouldQueryActorGraph() throws Exception {
+        createMovieWithActors("Graph Movie One", "Graph Actor One", "Graph Actor Two");
+        createMovieWithActors("Graph Movie Two", "Graph Actor Two", "Graph Actor Three");
+        createMovieWithActors("Graph Movie Three", "Graph Actor Two", "Graph Actor Three");
+        Movie unconnected = createMovieWithActors("Graph Movie Four", "Graph Actor Four");
+        Long one = actorRepository.findByName("Graph Actor One").getId();
+        Long two = actorRepository.findByName("Graph Actor Two").getId();
+        Long three = actorRepository.findByName("Graph Actor Three").getId();
+
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/path/" + three)
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        ActorPath path = super.mapFromJson(mvcResult.getResponse().getContentAsString(), ActorPath.class);
+        assertEquals(2, path.getDegrees());
+        assertEquals(one, path.getSteps().get(0).getActorId());
+        assertEquals("Graph Movie One", path.getSteps().get(0).getMovieTitle());
+        assertEquals(two, path.getSteps().get(1).getActorId());
+        assertEquals(three, path.getSteps().get(2).getActorId());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/actors/" + two + "/costars")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        CoStar[] coStars = super.mapFromJson(mvcResult.getResponse().getContentAsString(), CoStar[].class);
+        assertEquals(2, coStars.length);
+        assertEquals(three, coStars[0].getId());
+        assertEquals(2, coStars[0].getSharedMovies());
+        assertEquals(one, coStars[1].getId());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/neighbourhood").param("hops", "3")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        ActorNeighbourhood neighbourhood = super.mapFromJson(mvcResult.getResponse().getContentAsString(), ActorNeighbourhood.class);
+        assertEquals(Arrays.asList(1, 1), neighbourhood.getActorsPerHop());
+        assertEquals(2, neighbourhood.getTotal());
+
+        Long four = unconnected.getActors().iterator().next().getId();
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/path/" + four)).andReturn().getResponse().getStatus());
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get("/actors/99999999/costars")).andReturn().getResponse().getStatus());
+        assertEquals(400, mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/neighbourhood").param("hops", "0")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldKeepActorGraphInSyncWithWrites() throws Exception {
+        Movie first = createMovieWithActors("Sync Graph One", "Sync Actor One", "Sync Actor Two");
+        createMovieWithActors("Sync Graph Two", "Sync Actor Two", "Sync Actor Three");
+        Long one = actorRepository.findByName("Sync Actor One").getId();
+        Long three = actorRepository.findByName("Sync Actor Three").getId();
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/path/" + three)).andReturn().getResponse().getStatus());
+
+        // the next read merges the removal into the graph read above
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.delete("/movies/" + first.getId())).andReturn().getResponse().getStatus());
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/path/" + three)).andReturn().getResponse().getStatus());
+        assertEquals(404, mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/costars")).andReturn().getResponse().getStatus());
+
+        createMovieWithActors("Sync Graph Three", "Sync Actor One", "Sync Actor Three");
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/actors/" + one + "/path/" + three)
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        ActorPath path = super.mapFromJson(mvcResult.getResponse().getContentAsString(), ActorPath.class);
+        assertEquals(1, path.getDegrees());
+        assertEquals("Sync Graph Three", path.getSteps().get(0).getMovieTitle());
+    }
+
+    private Movie createMovieWithActors(String title, String... names) throws Exception {
+        Movie movie = new Movie();
+        movie.setTitle(title);
+        movie.setReleaseYear(2022);
+        Set<Actor> actors = new LinkedHashSet<>();
+        for (String name : names) {
+            Actor actor = new Actor();
+            actor.setName(name);
+            actors.add(actor);
+        }
+        movie.setActors(actors);
+        return createMovie(movie);
+    }
+
+    @Test
+    public void shouldGet404ForUnknownImportJob() throws Exception {
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/import/does-not-exist")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(404, mvcResult.getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldOnlyWriteChangedActorRowsOnUpdate() throws Exception {
+        Movie created = createMovieWithActors("Diff Title", "Diff Actor A", "Diff Actor B", "Diff Actor C");
+        Movie movie = new Movie();
+        Set<Actor> actors = new HashSet<>();
+        for (String name : Arrays.asList("Diff Actor A", "Diff Actor B", "Diff Actor D")) {
+            Actor actor = new Actor();
+            actor.setName(name);
+            actors.add(actor);
+        }
+        movie.setActors(actors);
+
+        QueryLog log = QueryLog.start();
+        MvcResult mvcResult;
+        try {
+            mvcResult = mvc.perform(MockMvcRequestBuilders.patch("/movies/" + created.getId())
+                    .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(movie))).andReturn();
+        } finally {
+            log.stop();
+        }
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        Movie response = super.mapFromJson(mvcResult.getResponse().getContentAsString(), Movie.class);
+        assertEquals(new HashSet<>(Arrays.asList("Diff Actor A", "Diff Actor B", "Diff Actor D")),
+                response.getActors().stream().map(Actor::getName).collect(Collectors.toSet()));
+        // one join row removed and one added, instead of all of them deleted and inserted again
+        assertEquals(1, statements(log, "delete from movie_actor"), log::toString);
+        assertEquals(1, statements(log, "insert into movie_actor"), log::toString);
+    }
+
+    private static int statements(QueryLog log, String prefix) {
+        return log.getCountsByShape().entrySet().stream()
+                .filter(shape -> shape.getKey().startsWith(prefix))
+                .mapToInt(Map.Entry::getValue).sum();
+    }
+
+    @Test
+    public void shouldNotBringBackMovieWhenUpdateRacesDelete() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 20; round++) {
+                Movie created = createMovie(similarityMovie("Racewrite Title " + round, "RaceGenre", "Race Actor", "Race Director"));
+                Movie changed = new Movie();
+                changed.setTitle("Racewrite Changed " + round);
+                String inputJson = super.mapToJson(changed);
+                String uri = "/movies/" + created.getId();
+                Future<MvcResult> update = executor.submit(() -> mvc.perform(MockMvcRequestBuilders.patch(uri)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE).content(inputJson)).andReturn());
+                Future<MvcResult> delete = executor.submit(() -> mvc.perform(MockMvcRequestBuilders.delete(uri)).andReturn());
+                update.get();
+                assertEquals(200, delete.get().getResponse().getStatus());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // whichever order the writes reached the indexes in, none of them may still hold a deleted movie
+        GenreFilterResult result = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/filter")
+                .param("genre", "RaceGenre").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn()
+                .getResponse().getContentAsString(), GenreFilterResult.class);
+        assertEquals(0, result.getTotal());
+        SearchHit[] hits = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies/search").param("q", "Racewrite")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), SearchHit[].class);
+        assertEquals(0, hits.length);
+    }
+
+    @Test
+    public void shouldCreateNewActorOnceForConcurrentMovies() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<MvcResult>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Movie movie = new Movie();
+            movie.setTitle("Concurrent Title " + i);
+            movie.setReleaseYear(2022);
+            Actor actor = new Actor();
+            actor.setName("Concurrent New Actor");
+            Set<Actor> actors = new HashSet<>();
+            actors.add(actor);
+            movie.setActors(actors);
+            String inputJson = super.mapToJson(movie);
+            results.add(executor.submit(() -> mvc.perform(MockMvcRequestBuilders.post("/movies")
+                    .contentType(MediaType.APPLICATION_JSON_VALUE).content(inputJson)).andReturn()));
+        }
+        executor.shutdown();
+
+        Long actorId = null;
+        for (Future<MvcResult> result : results) {
+            MvcResult mvcResult = result.get();
+            assertEquals(201, mvcResult.getResponse().getStatus());
+            Movie response = super.mapFromJson(mvcResult.getResponse().getContentAsString(), Movie.class);
+            if (actorId == null) actorId = response.getActors().iterator().next().getId();
+            assertEquals(actorId, response.getActors().iterator().next().getId());
+        }
+    }
+
+    @Test
+    public void shouldGetDictionaryCacheStats() throws Exception {
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/caches/dictionary")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        JsonNode stats = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertTrue(stats.has("genres"));
+        assertTrue(stats.has("actors"));
+        assertTrue(stats.has("directors"));
+    }
+
+    @Test
+    public void shouldReportStartupImportAndReadiness() throws Exception {
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/import/startup")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        JsonNode job = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertEquals("COMPLETED", job.get("status").asText());
+        assertEquals(1000, job.get("progress").get("rowsWritten").asLong());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/actuator/health/readiness")).andReturn();
+        assertEquals(200, mvcResult.getResponse().getStatus());
+        JsonNode readiness = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertEquals("UP", readiness.get("components").get("movieData").get("status").asText());
+        assertEquals(200, mvc.perform(MockMvcRequestBuilders.get("/actuator/health/liveness")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldStayWithinQueryBudgets() throws Exception {
+        // movies with directors, then genres, then actors, however many movies there are
+        MvcResult mvcResult = assertQueryBudget(3, () -> mvc.perform(MockMvcRequestBuilders.get("/movies/filter/Action")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn());
+        assertEquals(200, mvcResult.getResponse().getStatus());
+
+        mvcResult = assertQueryBudget(3, () -> mvc.perform(MockMvcRequestBuilders.get("/movies?limit=200")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn());
+        assertEquals(200, mvcResult.getResponse().getStatus());
+
+        mvcResult = assertQueryBudget(0, () -> mvc.perform(MockMvcRequestBuilders.get("/movies/range")
+                .param("year", "2010..2016").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn());
+        assertEquals(200, mvcResult.getResponse().getStatus());
+    }
+
+    @Test
+    public void shouldNormalizeStatementShapes() {
+        assertEquals("select * from movie where id in (?) and title = ?",
+                QueryLog.normalize("SELECT *  FROM movie WHERE id IN (?, ?, ?) AND title = 'It''s'"));
+        assertEquals(QueryLog.normalize("select * from actor where id=1"), QueryLog.normalize("select * from actor where id=42"));
+    }
+
+    @Test
+    public void shouldNestQueryLogs() throws Exception {
+        QueryLog outer = QueryLog.start();
+        QueryLog inner = QueryLog.start();
+        try {
+            mvc.perform(MockMvcRequestBuilders.get("/movies?limit=5").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+            inner.stop();
+            mvc.perform(MockMvcRequestBuilders.get("/movies?limit=5").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        } finally {
+            inner.stop();
+            outer.stop();
+        }
+
+        assertTrue(inner.getStatementCount() > 0);
+        // the outer recording sees the statements of both requests, the inner one only those of the first
+        assertEquals(2 * inner.getStatementCount(), outer.getStatementCount(), outer::toString);
+    }
+
+    @Test
+    public void shouldRecordRepositoryHibernateAndCacheMeters() throws Exception {
+        MoviePage page = super.mapFromJson(mvc.perform(MockMvcRequestBuilders.get("/movies").param("limit", "1")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn().getResponse().getContentAsString(), MoviePage.class);
+        String uri = "/movies/" + page.getMovies().get(0).getId();
+        mvc.perform(MockMvcRequestBuilders.get(uri).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        mvc.perform(MockMvcRequestBuilders.get(uri).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        Timer repository = meterRegistry.find("spring.data.repository.invocations").tag("repository", "MovieRepository").timer();
+        assertNotNull(repository);
+        assertTrue(repository.count() > 0);
+        assertNotNull(meterRegistry.find("hibernate.sessions.open").functionCounter());
+        assertTrue(meterRegistry.get("cache.gets").tags("cache", "movie", "result", "hit").functionCounter().count() > 0);
+        assertNotNull(meterRegistry.find("cache.gets").tags("cache", "actors", "result", "miss").functionCounter());
+    }
+
+    @Test
+    public void shouldTimeBulkAndProjectionRepositoryMethods() throws Exception {
+        // the startup import writes through MovieBulkRepository
+        Timer insertMovies = meterRegistry.find("movie.bulk.repository").tag("method", "insertMovies").timer();
+        assertNotNull(insertMovies);
+        assertTrue(insertMovies.count() > 0);
+
+        mvc.perform(MockMvcRequestBuilders.get("/movies").param("fields", "id,title").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        mvc.perform(MockMvcRequestBuilders.get("/movies").param("unpaged", "true").param("fields", "id")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        Timer findPage = meterRegistry.find("movie.projection.repository").tag("method", "findPage").timer();
+        assertNotNull(findPage);
+        assertTrue(findPage.count() > 0);
+        Timer scrollAll = meterRegistry.find("movie.projection.repository").tag("method", "scrollAll").timer();
+        assertNotNull(scrollAll);
+        assertTrue(scrollAll.count() > 0);
+    }
+
+    @Test
+    public void shouldServeUpdatedMovieAfterItWasCached() throws Exception {
+        Movie movie = new Movie();
+        movie.setTitle("Cached Title");
+        movie.setReleaseYear(2022);
+        MvcResult mvcResult = mvc.perform(MockMvcRequestBuilders.post("/movies")
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(movie))).andReturn();
+        Long id = super.mapFromJson(mvcResult.getResponse().getContentAsString(), Movie.class).getId();
+
+        mvc.perform(MockMvcRequestBuilders.get("/movies/" + id).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + id).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals("Cached Title", super.mapFromJson(mvcResult.getResponse().getContentAsString(), Movie.class).getTitle());
+
+        Movie patch = new Movie();
+        patch.setTitle("Updated Cached Title");
+        mvc.perform(MockMvcRequestBuilders.patch("/movies/" + id)
+                .contentType(MediaType.APPLICATION_JSON_VALUE).content(super.mapToJson(patch))).andReturn();
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + id).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals("Updated Cached Title", super.mapFromJson(mvcResult.getResponse().getContentAsString(), Movie.class).getTitle());
+
+        mvc.perform(MockMvcRequestBuilders.delete("/movies/" + id)).andReturn();
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/movies/" + id).accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        assertEquals(404, mvcResult.getResponse().getStatus());
+
+        mvcResult = mvc.perform(MockMvcRequestBuilders.get("/caches/movie").accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        JsonNode stats = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+        assertTrue(stats.get("hits").asLong() > 0);
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.repository.MovieBulkRepository;
+import com.connection.assessment.repository.MovieRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Writes of one movie handed to the indexer in the opposite order to the one they were committed in.
+ */
+public class MovieIndexerTest {
+
+    private static final Long ID = 9L;
+
+    private MovieIndexer movieIndexer;
+    private MovieIndex index;
+    private MovieRepository movieRepository;
+
+    @BeforeEach
+    public void setUp() {
+        index = mock(MovieIndex.class);
+        movieRepository = mock(MovieRepository.class);
+        movieIndexer = new MovieIndexer();
+        movieIndexer.indexes = Collections.singletonList(index);
+        movieIndexer.movieRepository = movieRepository;
+        movieIndexer.transactionManager = mock(PlatformTransactionManager.class);
+        when(movieIndexer.transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    public void shouldIgnorePutArrivingAfterDelete() {
+        movieIndexer.indexed(movie(0));
+        movieIndexer.removed(ID, 1L);
+        movieIndexer.indexed(movie(1));
+        movieIndexer.indexed(Collections.singletonList(movie(1)));
+
+        verify(index).put(any());
+        verify(index).remove(ID);
+        verify(index, never()).putAll(any());
+    }
+
+    @Test
+    public void shouldIgnoreOlderPutAndVotes() {
+        Movie newer = movie(2);
+        movieIndexer.indexed(newer);
+        movieIndexer.indexed(movie(1));
+        movieIndexer.votesChanged(Collections.singletonList(new MovieBulkRepository.StoredVotes(ID, 5.0, 10, 2)));
+
+        verify(index).put(newer);
+        verify(index).put(any());
+        verify(index, never()).votesChanged(anyLong(), anyDouble(), anyInt());
+    }
+
+    @Test
+    public void shouldApplyVotesOnTopOfPreviousVersionOnly() {
+        Movie created = movie(0);
+        movieIndexer.indexed(created);
+        movieIndexer.votesChanged(Collections.singletonList(new MovieBulkRepository.StoredVotes(ID, 5.0, 10, 1)));
+
+        // the write of version 2 has not been passed on yet, so the movie is read again
+        Movie stored = movie(3);
+        when(movieRepository.findByIdsWithDirector(Collections.singletonList(ID))).thenReturn(Collections.singletonList(stored));
+        movieIndexer.votesChanged(Collections.singletonList(new MovieBulkRepository.StoredVotes(ID, 6.0, 11, 3)));
+        movieIndexer.indexed(movie(2));
+
+        InOrder order = inOrder(index);
+        order.verify(index).put(created);
+        order.verify(index).votesChanged(ID, 5.0, 10);
+        order.verify(index).putAll(Collections.singletonList(stored));
+        verify(index, never()).votesChanged(ID, 6.0, 11);
+        verify(index, never()).put(stored);
+    }
+
+    private static Movie movie(long version) {
+        Movie movie = new Movie();
+        movie.setId(ID);
+        movie.setTitle("Guardians of the Galaxy " + version);
+        movie.setVersion(version);
+        return movie;
+    }
+}
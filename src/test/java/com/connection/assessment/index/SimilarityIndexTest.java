@@ -0,0 +1,82 @@
+package com.connection.assessment.index;
+
+import com.connection.assessment.model.dto.SimilarMovie;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Entries listing a movie that was deleted or rated again, including entries of movies left out of a full bucket.
+ */
+public class SimilarityIndexTest {
+
+    private SimilarityIndex similarityIndex;
+
+    @BeforeEach
+    public void setUp() {
+        similarityIndex = new SimilarityIndex();
+    }
+
+    @Test
+    public void shouldDropDeletedMovieFromEntriesOutsideItsBuckets() {
+        // the same actor and director put all of them into the same buckets, which take 500 movies
+        List<Movie> movies = new ArrayList<>();
+        for (long id = 1; id <= 501; id++) movies.add(movie(id, 7.0));
+        similarityIndex.putAll(movies);
+
+        List<SimilarMovie> similar = similarityIndex.similar(501L, 5);
+        assertEquals(5, similar.size());
+        Long deleted = similar.get(0).getId();
+        similarityIndex.remove(deleted);
+
+        similar = similarityIndex.similar(501L, 5);
+        assertEquals(5, similar.size());
+        assertTrue(similar.stream().noneMatch(movie -> movie.getId().equals(deleted)));
+    }
+
+    @Test
+    public void shouldRescoreEntriesAfterVotesChanged() {
+        similarityIndex.putAll(Arrays.asList(movie(1L, 7.0), movie(2L, 7.0), movie(3L, 4.0)));
+        assertEquals(2L, similarityIndex.similar(1L, 2).get(0).getId());
+
+        similarityIndex.votesChanged(2L, 1.0, 100);
+
+        List<SimilarMovie> similar = similarityIndex.similar(1L, 2);
+        assertEquals(3L, similar.get(0).getId());
+        assertEquals(2L, similar.get(1).getId());
+        assertEquals(3L, similarityIndex.similar(2L, 1).get(0).getId());
+    }
+
+    private static Movie movie(long id, double rating) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle("Similarity Index Movie " + id);
+        movie.setReleaseYear(2022);
+        movie.setRating(rating);
+        movie.setRuntime(100);
+        Genre genre = new Genre();
+        genre.setCode("Drama");
+        movie.setGenres(new HashSet<>(Collections.singletonList(genre)));
+        Actor actor = new Actor();
+        actor.setId(1L);
+        actor.setName("Similarity Actor");
+        movie.setActors(new HashSet<>(Collections.singletonList(actor)));
+        Director director = new Director();
+        director.setId(1L);
+        director.setName("Similarity Director");
+        movie.setDirector(director);
+        return movie;
+    }
+}
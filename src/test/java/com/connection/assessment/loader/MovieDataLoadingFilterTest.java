@@ -0,0 +1,78 @@
+package com.connection.assessment.loader;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieDataLoadingFilterTest {
+
+    @Test
+    public void shouldAskToRetryWhileStartupImportIsRunning() throws Exception {
+        ImportJob job = new ImportJob(ImportJobService.STARTUP_JOB_ID);
+        job.running();
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(job, "/movies", chain);
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        assertEquals("5", response.getHeader("Retry-After"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void shouldNotAskToRetryWhenStartupImportFailed() throws Exception {
+        ImportJob job = new ImportJob(ImportJobService.STARTUP_JOB_ID);
+        job.failed(new OutOfMemoryError("Java heap space"));
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(job, "/actors/1/movies", chain);
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        assertNull(response.getHeader("Retry-After"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void shouldPassRequestsOnceStartupImportCompleted() throws Exception {
+        ImportJob job = new ImportJob(ImportJobService.STARTUP_JOB_ID);
+        job.completed();
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(job, "/movies", chain);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    public void shouldKeepImportEndpointsOpenWhileStartupImportIsRunning() throws Exception {
+        ImportJob job = new ImportJob(ImportJobService.STARTUP_JOB_ID);
+        job.running();
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = filter(job, "/movies/import/" + ImportJobService.STARTUP_JOB_ID, chain);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    private static MockHttpServletResponse filter(ImportJob startupJob, String path, MockFilterChain chain) throws Exception {
+        MovieDataLoadingFilter filter = new MovieDataLoadingFilter();
+        filter.importJobService = mock(ImportJobService.class);
+        when(filter.importJobService.getStartupJob()).thenReturn(startupJob);
+        filter.retryAfterSeconds = 5;
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", path), response, chain);
+        return response;
+    }
+}
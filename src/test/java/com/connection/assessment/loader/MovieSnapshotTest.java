@@ -0,0 +1,143 @@
+package com.connection.assessment.loader;
+
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Director;
+import com.connection.assessment.model.entity.Genre;
+import com.connection.assessment.model.entity.Movie;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MovieSnapshotTest {
+
+    private static final byte[] CHECKSUM = {1, 2, 3, 4};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReadBackWrittenMovies() throws Exception {
+        Path path = directory.resolve("movies.snapshot");
+        List<Movie> movies = Arrays.asList(movie("Guardians of the Galaxy", "James Gunn", 8.1, "Action", "Sci-Fi"),
+                movie("Prometheus", null, null, "Sci-Fi"));
+        write(path, movies);
+
+        Iterator<Movie> snapshot = MovieSnapshot.open(path, CHECKSUM);
+        List<Movie> read = new ArrayList<>();
+        snapshot.forEachRemaining(read::add);
+
+        assertEquals(movies, read);
+        assertNull(read.get(1).getDirector());
+        assertNull(read.get(1).getRating());
+    }
+
+    @Test
+    public void shouldIgnoreSnapshotOfOtherSource() throws Exception {
+        Path path = directory.resolve("movies.snapshot");
+        write(path, Arrays.asList(movie("Prometheus", "Ridley Scott", 7.0, "Sci-Fi")));
+
+        assertNull(MovieSnapshot.open(path, new byte[]{4, 3, 2, 1}));
+        assertNull(MovieSnapshot.open(directory.resolve("missing.snapshot"), CHECKSUM));
+    }
+
+    @Test
+    public void shouldIgnoreTruncatedSnapshot() throws Exception {
+        Path path = directory.resolve("movies.snapshot");
+        write(path, Arrays.asList(movie("Prometheus", "Ridley Scott", 7.0, "Sci-Fi")));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        assertNull(MovieSnapshot.open(path, CHECKSUM));
+    }
+
+    @Test
+    public void shouldIgnoreSnapshotWhoseRecordsDoNotMatchTrailer() throws Exception {
+        Path one = directory.resolve("one.snapshot");
+        Path two = directory.resolve("two.snapshot");
+        write(one, Arrays.asList(movie("Prometheus", "Ridley Scott", 7.0, "Sci-Fi")));
+        write(two, Arrays.asList(movie("Prometheus", "Ridley Scott", 7.0, "Sci-Fi"), movie("Alien", "Ridley Scott", 8.5, "Horror")));
+        byte[] records = Files.readAllBytes(one);
+        byte[] trailer = Files.readAllBytes(two);
+        int trailerLength = 1 + 4 + 4;
+
+        // the records of one movie, followed by the trailer counting two
+        Path missingRecord = directory.resolve("missing-record.snapshot");
+        Files.write(missingRecord, concat(Arrays.copyOf(records, records.length - trailerLength),
+                Arrays.copyOfRange(trailer, trailer.length - trailerLength, trailer.length)));
+        assertNull(MovieSnapshot.open(missingRecord, CHECKSUM));
+
+        // the second record cut off in the middle, followed by a trailer that parses
+        Path cutRecord = directory.resolve("cut-record.snapshot");
+        Files.write(cutRecord, concat(Arrays.copyOf(trailer, trailer.length - trailerLength - 5),
+                Arrays.copyOfRange(trailer, trailer.length - trailerLength, trailer.length)));
+        assertNull(MovieSnapshot.open(cutRecord, CHECKSUM));
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail) {
+        byte[] bytes = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, bytes, head.length, tail.length);
+        return bytes;
+    }
+
+    @Test
+    public void shouldDiscardUncommittedSnapshot() throws Exception {
+        Path path = directory.resolve("movies.snapshot");
+        try (MovieSnapshot.Writer writer = MovieSnapshot.create(path, CHECKSUM)) {
+            writer.tee(Arrays.asList(movie("Prometheus", "Ridley Scott", 7.0, "Sci-Fi")).iterator()).next();
+        }
+
+        assertNull(MovieSnapshot.open(path, CHECKSUM));
+        assertEquals(0, directory.toFile().list().length);
+    }
+
+    private static void write(Path path, List<Movie> movies) throws Exception {
+        try (MovieSnapshot.Writer writer = MovieSnapshot.create(path, CHECKSUM)) {
+            Iterator<Movie> tee = writer.tee(movies.iterator());
+            while (tee.hasNext()) tee.next();
+            writer.commit();
+        }
+        assertTrue(path.toFile().isFile());
+    }
+
+    private static Movie movie(String title, String directorName, Double rating, String... genreCodes) {
+        Movie movie = new Movie();
+        movie.setMovieRank(1);
+        movie.setTitle(title);
+        movie.setDescription("Description of " + title);
+        movie.setReleaseYear(2014);
+        movie.setRuntime(121);
+        movie.setRating(rating);
+        movie.setVotes(757074);
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (String code : genreCodes) {
+            Genre genre = new Genre();
+            genre.setCode(code);
+            genres.add(genre);
+        }
+        movie.setGenres(genres);
+        Actor actor = new Actor();
+        actor.setName("Chris Pratt");
+        movie.setActors(new LinkedHashSet<>(Arrays.asList(actor)));
+        if (directorName != null) {
+            Director director = new Director();
+            director.setName(directorName);
+            movie.setDirector(director);
+        }
+        return movie;
+    }
+}
@@ -0,0 +1,67 @@
+package com.connection.assessment.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrefetchingIteratorTest {
+
+    @Test
+    public void shouldReturnSourceElementsInOrder() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(new Counter(5, null), 2, "test-prefetch")) {
+                for (int i = 0; i < 5; i++) {
+                    assertTrue(iterator.hasNext());
+                    assertEquals(i, iterator.next());
+                }
+                assertFalse(iterator.hasNext());
+            }
+        });
+    }
+
+    @Test
+    public void shouldRethrowErrorOfSourceInsteadOfWaitingForever() {
+        AssertionError error = new AssertionError("source broke");
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(new Counter(2, error), 2, "test-prefetch")) {
+                assertEquals(0, iterator.next());
+                assertEquals(1, iterator.next());
+                assertSame(error, assertThrows(AssertionError.class, iterator::hasNext));
+            }
+        });
+    }
+
+    /**
+     * Counts up to {@code size}, then throws {@code failure} if there is one.
+     */
+    private static class Counter implements Iterator<Integer> {
+
+        private final int size;
+        private final Error failure;
+        private int next;
+
+        Counter(int size, Error failure) {
+            this.size = size;
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == size && failure != null) throw failure;
+            return next < size;
+        }
+
+        @Override
+        public Integer next() {
+            return next++;
+        }
+    }
+}
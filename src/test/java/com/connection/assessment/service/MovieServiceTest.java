@@ -0,0 +1,121 @@
+package com.connection.assessment.service;
+
+import com.connection.assessment.index.MovieIndexer;
+import com.connection.assessment.model.entity.Actor;
+import com.connection.assessment.model.entity.Movie;
+import com.connection.assessment.repository.MovieRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Writes without an If-Match header against a repository whose every write loses to a concurrent one, such as a
+ * vote flush incrementing the version.
+ */
+public class MovieServiceTest {
+
+    private static final Long ID = 9L;
+
+    private MovieService movieService;
+    private MovieRepository movieRepository;
+    private MovieIndexer movieIndexer;
+    private Movie movie;
+
+    @BeforeEach
+    public void setUp() {
+        movieRepository = mock(MovieRepository.class);
+        movieIndexer = mock(MovieIndexer.class);
+        movieService = new MovieService();
+        movieService.movieRepository = movieRepository;
+        movieService.movieIndexer = movieIndexer;
+        movieService.movieCache = mock(MovieCache.class);
+        movieService.transactionManager = mock(PlatformTransactionManager.class);
+        when(movieService.transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        movie = new Movie();
+        movie.setId(ID);
+        movie.setTitle("Guardians of the Galaxy");
+        movie.setVersion(3L);
+        when(movieRepository.findById(ID)).thenReturn(Optional.of(movie));
+    }
+
+    @Test
+    public void shouldRetryDeleteThatLostToConcurrentWrite() {
+        doThrow(new ObjectOptimisticLockingFailureException(Movie.class, ID)).doNothing().when(movieRepository).delete(movie);
+
+        movieService.deleteMovie(ID);
+
+        verify(movieRepository, times(2)).delete(movie);
+        verify(movieIndexer).removed(ID, 3L);
+    }
+
+    @Test
+    public void shouldAnswerConflictWhenDeleteKeepsLosingToConcurrentWrites() {
+        doThrow(new ObjectOptimisticLockingFailureException(Movie.class, ID)).when(movieRepository).delete(movie);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> movieService.deleteMovie(ID));
+
+        assertEquals(HttpStatus.CONFLICT, e.getStatus());
+        verify(movieRepository, times(3)).delete(movie);
+        verifyNoInteractions(movieIndexer);
+    }
+
+    @Test
+    public void shouldResolveNamesOnceBeforeRetriedUpdate() {
+        DictionaryCache dictionaryCache = mock(DictionaryCache.class);
+        movieService.dictionaryCache = dictionaryCache;
+        when(dictionaryCache.actors(any())).thenReturn(new LinkedHashSet<>(Collections.singletonList(actor(1L))));
+        when(movieRepository.save(movie)).thenThrow(new ObjectOptimisticLockingFailureException(Movie.class, ID)).thenReturn(movie);
+        Movie changed = new Movie();
+        changed.setActors(new LinkedHashSet<>(Collections.singletonList(actor(null))));
+        changed.setMetaScore(76);
+
+        Movie updated = movieService.updateMovie(changed, ID);
+
+        InOrder order = inOrder(dictionaryCache, movieService.transactionManager);
+        order.verify(dictionaryCache).actors(Collections.singleton("Chris Pratt"));
+        order.verify(movieService.transactionManager, times(2)).getTransaction(any());
+        assertEquals(1L, updated.getActors().iterator().next().getId());
+        assertEquals(76, updated.getMetaScore());
+    }
+
+    @Test
+    public void shouldAnswerConflictWhenUpdateKeepsLosingToConcurrentWrites() {
+        when(movieRepository.save(movie)).thenThrow(new ObjectOptimisticLockingFailureException(Movie.class, ID));
+        Movie changed = new Movie();
+        changed.setTitle("Changed Title");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> movieService.updateMovie(changed, ID));
+
+        assertEquals(HttpStatus.CONFLICT, e.getStatus());
+        verify(movieRepository, times(3)).save(movie);
+        verifyNoInteractions(movieIndexer);
+    }
+
+    private static Actor actor(Long id) {
+        Actor actor = new Actor();
+        actor.setId(id);
+        actor.setName("Chris Pratt");
+        return actor;
+    }
+}